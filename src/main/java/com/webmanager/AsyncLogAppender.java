@@ -0,0 +1,333 @@
+package com.webmanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 异步日志写入器
+ * 调用方只需要把日志行放入有界队列，由唯一的写线程批量写入长期打开的FileChannel，
+ * 并按固定间隔执行一次fsync。队列满时默认先短暂等待，仍然放不进去就丢弃并计数；
+ * 设置为阻塞时调用方一直等待到写线程腾出空间，不丢弃日志，但磁盘变慢时会拖慢调用方。
+ * 设置了轮转处理器时，文件超过大小上限或跨天后由写线程关闭文件并交给处理器归档。
+ * 设置了写入监听器时，每批日志写入文件后会把它们的文件偏移通知给监听器，用于维护索引。
+ */
+public class AsyncLogAppender implements Runnable {
+
+    private static final int MAX_BATCH = 512;
+    // 队列满时调用方最多等待的时间，阻塞模式下是检查写线程是否已经停止的间隔
+    private static final long OFFER_TIMEOUT_MILLIS = 50;
+
+    private final File file;
+    private final Logger logger;
+    private final long syncIntervalMillis;
+    private final long maxSegmentBytes;
+    private final RotationHandler rotationHandler;
+    private final boolean blockWhenFull;
+    private volatile WriteListener writeListener;
+    private final BlockingQueue<String> queue;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final Object channelLock = new Object();
+    private Thread thread;
+    private FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    // 当前文件开始写入的日期，用于按天轮转
+    private LocalDate segmentDate;
+    private volatile boolean running = true;
+
+    /**
+     * @param blockWhenFull 队列满时是否一直等待，为false时等待OFFER_TIMEOUT_MILLIS后丢弃
+     */
+    public AsyncLogAppender(File file, Logger logger, int queueCapacity, long syncIntervalMillis,
+                            boolean blockWhenFull, long maxSegmentBytes, RotationHandler rotationHandler) {
+        this.file = file;
+        this.logger = logger;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.blockWhenFull = blockWhenFull;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.rotationHandler = rotationHandler;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    public AsyncLogAppender(File file, Logger logger, long maxSegmentBytes, RotationHandler rotationHandler) {
+        this(file, logger, 8192, 1000, false, maxSegmentBytes, rotationHandler); // 默认队列8192条，每秒fsync一次，队列满时丢弃
+    }
+
+    public AsyncLogAppender(File file, Logger logger) {
+        this(file, logger, 0, null);
+    }
+
+    /**
+     * 设置写入监听器，需要在启动写线程前调用
+     * @param writeListener 写入监听器
+     */
+    public void setWriteListener(WriteListener writeListener) {
+        this.writeListener = writeListener;
+    }
+
+    // 启动写线程
+    public void start() {
+        thread = new Thread(this, "WebManager-LogWriter-" + file.getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 追加一行日志，只做入队操作
+     * @param line 日志内容，不含换行符
+     * @return 是否成功入队，非阻塞模式下队列已满，或者写线程已经停止时返回false
+     */
+    public boolean append(String line) {
+        try {
+            // 写线程停止后入队的日志不会再写入文件
+            if (running && queue.offer(line)) {
+                return true;
+            }
+            if (blockWhenFull) {
+                // 写线程停止后不会再腾出空间，不能无限等待
+                while (running) {
+                    if (queue.offer(line, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } else if (running && queue.offer(line, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        droppedCount.incrementAndGet();
+        return false;
+    }
+
+    // 获取因队列满或写线程停止而丢弃的日志条数
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    // 获取队列中等待写入的日志条数
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * 丢弃队列中尚未写入的日志并清空文件
+     */
+    public void truncate() {
+        synchronized (channelLock) {
+            queue.clear();
+            try {
+                if (channel != null) {
+                    channel.truncate(0);
+                }
+                if (writeListener != null) {
+                    writeListener.truncated();
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "清空日志文件失败: " + file.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * 停止写线程，剩余日志会全部写入并同步到磁盘
+     */
+    public void close() {
+        // 不能中断写线程，FileChannel在线程被中断时会被直接关闭
+        running = false;
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        List<String> batch = new ArrayList<>(MAX_BATCH);
+        long lastSync = System.currentTimeMillis();
+        boolean dirty = false;
+        try {
+            openChannel();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "打开日志文件失败: " + file.getName(), e);
+            return;
+        }
+
+        while (running || !queue.isEmpty()) {
+            try {
+                String first = queue.poll(syncIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+
+            try {
+                if (!batch.isEmpty()) {
+                    if (channel == null) {
+                        // 上次轮转后重新打开失败，再试一次
+                        openChannel();
+                    }
+                    encode(batch);
+                    if (shouldRotate()) {
+                        rotate();
+                        dirty = false;
+                    }
+                    flushBuffer(batch);
+                    dirty = true;
+                }
+
+                // 组提交：到达同步间隔后统一fsync一次
+                long now = System.currentTimeMillis();
+                if (dirty && (now - lastSync >= syncIntervalMillis || !running)) {
+                    sync();
+                    lastSync = now;
+                    dirty = false;
+                }
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "写入日志文件失败: " + file.getName(), e);
+            }
+            batch.clear();
+        }
+        closeChannel();
+    }
+
+    private void openChannel() throws IOException {
+        synchronized (channelLock) {
+            channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            // 已有内容的文件按最后修改日期计算，插件跨天重启后第一次写入就会轮转
+            long modified = channel.size() > 0 ? file.lastModified() : System.currentTimeMillis();
+            segmentDate = LocalDate.ofInstant(Instant.ofEpochMilli(modified), ZoneId.systemDefault());
+        }
+    }
+
+    // 判断写入缓冲区中的数据前是否需要轮转
+    private boolean shouldRotate() throws IOException {
+        if (rotationHandler == null) {
+            return false;
+        }
+        long size = channel.size();
+        if (size == 0) {
+            return false;
+        }
+        return (maxSegmentBytes > 0 && size + buffer.remaining() > maxSegmentBytes)
+                || !LocalDate.now().equals(segmentDate);
+    }
+
+    // 关闭当前文件，交给轮转处理器归档，然后重新打开一个新文件
+    private void rotate() throws IOException {
+        synchronized (channelLock) {
+            channel.force(false);
+            channel.close();
+            channel = null;
+            try {
+                rotationHandler.rotate(file);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "轮转日志文件失败: " + file.getName(), e);
+            }
+            openChannel();
+        }
+    }
+
+    private void encode(List<String> batch) {
+        buffer.clear();
+        for (String line : batch) {
+            byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+            if (buffer.remaining() < bytes.length) {
+                ensureCapacity(buffer.position() + bytes.length);
+            }
+            buffer.put(bytes);
+        }
+        buffer.flip();
+    }
+
+    private void flushBuffer(List<String> batch) throws IOException {
+        synchronized (channelLock) {
+            // 以追加模式打开，写入位置就是当前文件末尾
+            long offset = channel.size();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (writeListener != null) {
+                writeListener.written(batch, offset);
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(capacity, buffer.capacity() * 2));
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+    }
+
+    private void sync() throws IOException {
+        synchronized (channelLock) {
+            if (channel != null) {
+                channel.force(false);
+            }
+        }
+    }
+
+    private void closeChannel() {
+        synchronized (channelLock) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "关闭日志文件失败: " + file.getName(), e);
+                }
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * 日志写入监听器，在写线程中持有文件锁时调用，不能执行耗时操作
+     */
+    public interface WriteListener {
+        /**
+         * 一批日志已经写入文件
+         * @param lines 日志行，不含换行符
+         * @param offset 第一行在文件中的偏移
+         */
+        void written(List<String> lines, long offset);
+
+        /**
+         * 日志文件已被清空
+         */
+        void truncated();
+    }
+
+    /**
+     * 日志文件轮转处理器
+     */
+    public interface RotationHandler {
+        /**
+         * 处理已关闭写入的日志文件，返回前必须把它移走，写线程随后会在原路径创建新文件
+         * @param closedFile 已关闭的日志文件
+         */
+        void rotate(File closedFile) throws IOException;
+    }
+}
@@ -1,17 +1,24 @@
 package com.webmanager;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class AuthConfigManager {
 
     private static final String CONFIG_FILE = "auth_config.txt";
     private final File configFile;
+    private final Logger logger;
 
     public AuthConfigManager(WebManager plugin) {
         this.configFile = new File(plugin.getDataFolder(), CONFIG_FILE);
+        this.logger = plugin.getLogger();
         // 确保数据文件夹存在
         plugin.getDataFolder().mkdirs();
     }
@@ -47,18 +54,21 @@ public class AuthConfigManager {
                 }
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.log(Level.WARNING, "读取授权配置失败", e);
         }
 
         return authorizedIps;
     }
 
     /**
-     * 保存授权配置
+     * 保存授权配置，先写入临时文件再重命名，写入过程中崩溃也不会破坏原文件
+     * PrintWriter不抛出IOException，写入失败时通过checkError发现，这时不替换原文件
      * @param authorizedIps 授权IP映射，键为IP地址，值为过期时间
      */
     public void saveAuthConfig(Map<String, Long> authorizedIps) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(configFile))) {
+        File tempFile = new File(configFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile);
+             PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
             writer.println("# WebManager 授权配置文件");
             writer.println("# 格式: IP地址, 授权开始时间(毫秒), 授权结束时间(毫秒)");
             writer.println();
@@ -69,8 +79,22 @@ public class AuthConfigManager {
                 long endTime = entry.getValue();
                 writer.printf("%s, %d, %d%n", ip, currentTime, endTime);
             }
+            // checkError会先flush，写入过程中的任何错误都会在这里返回true
+            if (writer.checkError()) {
+                throw new IOException("写入临时文件失败: " + tempFile.getPath());
+            }
+            out.getFD().sync();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "保存授权配置失败，原文件保持不变", e);
+            tempFile.delete();
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), configFile.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.log(Level.SEVERE, "替换授权配置文件失败", e);
+            tempFile.delete();
         }
     }
 }
@@ -0,0 +1,185 @@
+package com.webmanager;
+
+import net.md_5.bungee.api.chat.BaseComponent;
+import org.bukkit.ChatColor;
+import org.bukkit.Server;
+import org.bukkit.command.CommandSender;
+import org.bukkit.permissions.Permission;
+import org.bukkit.permissions.PermissionAttachment;
+import org.bukkit.permissions.PermissionAttachmentInfo;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 记录命令输出的命令执行者
+ * 权限和OP状态都交给控制台，发送给它的消息去掉颜色代码后保存下来，作为命令的执行结果返回。
+ * 只在主线程中使用。
+ */
+public class CapturingCommandSender implements CommandSender {
+
+    private final CommandSender delegate;
+    private final int maxLines;
+    private final List<String> output = new ArrayList<>();
+    private int droppedLines;
+    private final Spigot spigot = new Spigot() {
+        @Override
+        public void sendMessage(BaseComponent component) {
+            capture(component.toPlainText());
+        }
+
+        @Override
+        public void sendMessage(BaseComponent... components) {
+            capture(BaseComponent.toPlainText(components));
+        }
+
+        @Override
+        public void sendMessage(UUID sender, BaseComponent component) {
+            sendMessage(component);
+        }
+
+        @Override
+        public void sendMessage(UUID sender, BaseComponent... components) {
+            sendMessage(components);
+        }
+    };
+
+    public CapturingCommandSender(CommandSender delegate, int maxLines) {
+        this.delegate = delegate;
+        this.maxLines = maxLines;
+    }
+
+    public CapturingCommandSender(CommandSender delegate) {
+        this(delegate, 1000); // 默认每条命令最多保存1000行输出
+    }
+
+    // 保存一条消息，多行消息拆分保存
+    private void capture(String message) {
+        if (message == null) {
+            return;
+        }
+        for (String line : ChatColor.stripColor(message).split("\n", -1)) {
+            if (output.size() < maxLines) {
+                output.add(line);
+            } else {
+                droppedLines++;
+            }
+        }
+    }
+
+    // 获取保存的输出，超过行数上限的部分只计数
+    public List<String> getOutput() {
+        return Collections.unmodifiableList(output);
+    }
+
+    // 超过行数上限而没有保存的行数
+    public int getDroppedLines() {
+        return droppedLines;
+    }
+
+    @Override
+    public void sendMessage(String message) {
+        capture(message);
+    }
+
+    @Override
+    public void sendMessage(String... messages) {
+        for (String message : messages) {
+            capture(message);
+        }
+    }
+
+    @Override
+    public void sendMessage(UUID sender, String message) {
+        capture(message);
+    }
+
+    @Override
+    public void sendMessage(UUID sender, String... messages) {
+        sendMessage(messages);
+    }
+
+    @Override
+    public Server getServer() {
+        return delegate.getServer();
+    }
+
+    @Override
+    public String getName() {
+        return "WebManager";
+    }
+
+    @Override
+    public Spigot spigot() {
+        return spigot;
+    }
+
+    @Override
+    public boolean isPermissionSet(String name) {
+        return delegate.isPermissionSet(name);
+    }
+
+    @Override
+    public boolean isPermissionSet(Permission perm) {
+        return delegate.isPermissionSet(perm);
+    }
+
+    @Override
+    public boolean hasPermission(String name) {
+        return delegate.hasPermission(name);
+    }
+
+    @Override
+    public boolean hasPermission(Permission perm) {
+        return delegate.hasPermission(perm);
+    }
+
+    @Override
+    public PermissionAttachment addAttachment(Plugin plugin, String name, boolean value) {
+        return delegate.addAttachment(plugin, name, value);
+    }
+
+    @Override
+    public PermissionAttachment addAttachment(Plugin plugin) {
+        return delegate.addAttachment(plugin);
+    }
+
+    @Override
+    public PermissionAttachment addAttachment(Plugin plugin, String name, boolean value, int ticks) {
+        return delegate.addAttachment(plugin, name, value, ticks);
+    }
+
+    @Override
+    public PermissionAttachment addAttachment(Plugin plugin, int ticks) {
+        return delegate.addAttachment(plugin, ticks);
+    }
+
+    @Override
+    public void removeAttachment(PermissionAttachment attachment) {
+        delegate.removeAttachment(attachment);
+    }
+
+    @Override
+    public void recalculatePermissions() {
+        delegate.recalculatePermissions();
+    }
+
+    @Override
+    public Set<PermissionAttachmentInfo> getEffectivePermissions() {
+        return delegate.getEffectivePermissions();
+    }
+
+    @Override
+    public boolean isOp() {
+        return delegate.isOp();
+    }
+
+    @Override
+    public void setOp(boolean value) {
+        delegate.setOp(value);
+    }
+}
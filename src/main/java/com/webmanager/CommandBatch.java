@@ -0,0 +1,238 @@
+package com.webmanager;
+
+import org.bukkit.Bukkit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 一批在主线程中依次执行的命令
+ * 作为分步工作提交给SyncGateway，每一步执行一条命令，由网关按每tick的时间预算安排，
+ * 大量命令不会让单个tick卡住。命令默认以控制台身份执行，输出从主线程在执行期间写入的日志中取回。
+ * 开启插件输出捕获时，插件命令改用CapturingCommandSender执行，输出逐条记录，不混入服务器日志；
+ * 它不是ConsoleCommandSender，检查执行者类型的插件会把它当作其他执行者，所以只用于批量执行。
+ * 原版命令只接受控制台、玩家等服务器自己的执行者，始终以控制台身份执行。执行者在执行前确定，每条命令只执行一次。
+ * 全部执行完后完成future，等待的线程在主线程长时间没有进展时取消还没有开始的命令。
+ */
+public class CommandBatch implements SyncGateway.Step<Void> {
+
+    public static final String SKIPPED = "skipped";
+
+    private final WebManager plugin;
+    private final List<String> commands;
+    private final boolean capturePluginOutput;
+    private final Result[] results;
+    private CompletableFuture<Void> done;
+    private final long createdAt = System.nanoTime();
+    // 已经开始和已经完成的命令数，主线程写入，等待的线程读取
+    private volatile int started;
+    private volatile int completed;
+    private volatile long lastProgressNanos = createdAt;
+
+    /**
+     * @param plugin 插件
+     * @param commands 依次执行的命令
+     * @param capturePluginOutput 插件命令是否使用CapturingCommandSender执行，为false时所有命令都以控制台身份执行
+     */
+    public CommandBatch(WebManager plugin, List<String> commands, boolean capturePluginOutput) {
+        this.plugin = plugin;
+        this.commands = commands;
+        this.capturePluginOutput = capturePluginOutput;
+        this.results = new Result[commands.size()];
+    }
+
+    // 提交给SyncGateway，从下一个tick开始执行
+    public void start() {
+        done = commands.isEmpty()
+                ? CompletableFuture.completedFuture(null)
+                : plugin.getSyncGateway().submitSteps(this);
+    }
+
+    // 执行下一条命令，由SyncGateway在主线程中调用，等待超时后future被取消，不会再被调用
+    @Override
+    public boolean step(CompletableFuture<Void> future) {
+        int index = started;
+        started = index + 1;
+        results[index] = execute(commands.get(index));
+        completed = index + 1;
+        lastProgressNanos = System.nanoTime();
+        if (completed < commands.size()) {
+            return false;
+        }
+        future.complete(null);
+        return true;
+    }
+
+    // 执行一条命令并记录输出，必须在主线程中调用
+    private Result execute(String command) {
+        if (!capturePluginOutput || !isPluginCommand(command)) {
+            return executeAsConsole(command);
+        }
+        CapturingCommandSender sender = new CapturingCommandSender(Bukkit.getConsoleSender());
+        long start = System.nanoTime();
+        try {
+            boolean success = Bukkit.dispatchCommand(sender, command);
+            return new Result(command, success ? HttpMetrics.COMMAND_SUCCESS : HttpMetrics.COMMAND_FAILURE,
+                    System.nanoTime() - start, sender.getOutput(), sender.getDroppedLines(),
+                    success ? null : "未知命令或用法错误");
+        } catch (RuntimeException e) {
+            return new Result(command, HttpMetrics.COMMAND_FAILURE, System.nanoTime() - start,
+                    sender.getOutput(), sender.getDroppedLines(), messageOf(e));
+        }
+    }
+
+    // 命令是否由插件注册，包括"插件名:命令"的形式；原版命令和commands.yml中的别名都不是
+    private static boolean isPluginCommand(String command) {
+        int space = command.indexOf(' ');
+        String label = space >= 0 ? command.substring(0, space) : command;
+        return !label.isEmpty() && Bukkit.getPluginCommand(label) != null;
+    }
+
+    /**
+     * 以控制台身份执行，输出写入服务器日志，从LogListener中取回执行期间主线程写入的日志作为输出
+     * 命令在主线程中同步执行，其他线程同时写入的日志与命令无关，不计入输出
+     */
+    private Result executeAsConsole(String command) {
+        LogListener logListener = plugin.getLogListener();
+        long before = logListener.getLatestSequence();
+        long threadId = Thread.currentThread().threadId();
+        long start = System.nanoTime();
+        try {
+            boolean success = Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command);
+            long duration = System.nanoTime() - start;
+            List<String> output = new ArrayList<>();
+            for (LogListener.LogEntry entry : logListener.getEntriesSince(before, 1000)) {
+                if (entry.getThreadId() == threadId) {
+                    output.add(entry.getMessage());
+                }
+            }
+            return new Result(command, success ? HttpMetrics.COMMAND_SUCCESS : HttpMetrics.COMMAND_FAILURE,
+                    duration, Collections.unmodifiableList(output), 0, success ? null : "未知命令或用法错误");
+        } catch (RuntimeException e) {
+            return new Result(command, HttpMetrics.COMMAND_FAILURE, System.nanoTime() - start,
+                    Collections.emptyList(), 0, messageOf(e));
+        }
+    }
+
+    // 命令抛出的异常通常被包装成CommandException，使用原始异常的消息
+    private static String messageOf(Throwable e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    /**
+     * 等待所有命令执行完
+     * 只要主线程还在不断执行命令就一直等待，超过idleTimeoutMillis没有任何进展时取消剩余的命令
+     * @param idleTimeoutMillis 允许主线程没有进展的最长时间
+     * @return 全部执行完返回true，超时返回false
+     */
+    public boolean await(long idleTimeoutMillis) {
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        while (true) {
+            long remaining = lastProgressNanos + idleNanos - System.nanoTime();
+            if (remaining <= 0) {
+                done.cancel(false);
+                return false;
+            }
+            try {
+                done.get(remaining, TimeUnit.NANOSECONDS);
+                return true;
+            } catch (TimeoutException e) {
+                // 期间有进展时继续等待
+            } catch (CancellationException e) {
+                // 插件停止，剩余的命令不会再执行
+                return false;
+            } catch (InterruptedException e) {
+                done.cancel(false);
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    // 从提交到现在（或者执行完）的纳秒数
+    public long getElapsedNanos() {
+        boolean finished = done.isDone() && !done.isCancelled();
+        return (finished ? lastProgressNanos : System.nanoTime()) - createdAt;
+    }
+
+    /**
+     * 获取每条命令的结果，超时后调用时，还在执行的命令记为超时，没有开始的命令记为跳过
+     * @return 与提交的命令顺序相同的结果
+     */
+    public List<Result> getResults() {
+        int finished = completed;
+        int running = started;
+        List<Result> list = new ArrayList<>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            if (i < finished) {
+                list.add(results[i]);
+            } else if (i < running) {
+                list.add(new Result(commands.get(i), HttpMetrics.COMMAND_TIMEOUT, -1, Collections.emptyList(), 0,
+                        "等待主线程超时，命令可能仍在执行"));
+            } else {
+                list.add(new Result(commands.get(i), SKIPPED, -1, Collections.emptyList(), 0,
+                        "服务器主线程繁忙，命令未执行"));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 单条命令的执行结果
+     */
+    public static final class Result {
+        private final String command;
+        private final String status;
+        private final long durationNanos;
+        private final List<String> output;
+        private final int droppedLines;
+        private final String error;
+
+        Result(String command, String status, long durationNanos, List<String> output, int droppedLines, String error) {
+            this.command = command;
+            this.status = status;
+            this.durationNanos = durationNanos;
+            this.output = output;
+            this.droppedLines = droppedLines;
+            this.error = error;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        // 执行结果：success、failure、timeout或skipped
+        public String getStatus() {
+            return status;
+        }
+
+        // 执行耗时（纳秒），没有执行完时为-1
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        // 命令输出的消息，已经去掉颜色代码
+        public List<String> getOutput() {
+            return output;
+        }
+
+        // 超过行数上限而没有保存的行数
+        public int getDroppedLines() {
+            return droppedLines;
+        }
+
+        // 失败原因，成功时为null
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.webmanager;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * 服务器控制台日志采集
+ * 服务器使用log4j时在根记录器上添加一个appender，可以收到所有插件和服务器本身的日志；
+ * 运行环境中没有log4j时退回到在java.util.logging的根记录器上添加处理器。
+ */
+public class ConsoleLogCapture {
+
+    private final WebManager plugin;
+    private final LogListener logListener;
+    private Log4jLogAppender log4jAppender;
+    private Handler julHandler;
+
+    public ConsoleLogCapture(WebManager plugin, LogListener logListener) {
+        this.plugin = plugin;
+        this.logListener = logListener;
+    }
+
+    // 开始采集控制台日志
+    public void start() {
+        if (isLog4jAvailable()) {
+            try {
+                log4jAppender = Log4jLogAppender.install(logListener);
+                return;
+            } catch (LinkageError | RuntimeException e) {
+                plugin.getLogger().warning("无法接入log4j日志，改用java.util.logging: " + e.getMessage());
+                log4jAppender = null;
+            }
+        }
+        julHandler = new JulHandler();
+        Logger.getLogger("").addHandler(julHandler);
+    }
+
+    // 停止采集控制台日志
+    public void stop() {
+        if (log4jAppender != null) {
+            log4jAppender.uninstall();
+            log4jAppender = null;
+        }
+        if (julHandler != null) {
+            Logger.getLogger("").removeHandler(julHandler);
+            julHandler = null;
+        }
+    }
+
+    // 只有在log4j-core存在并且是当前的日志实现时才使用appender，避免加载不存在的类
+    private boolean isLog4jAvailable() {
+        try {
+            Class.forName("org.apache.logging.log4j.core.Logger", false, getClass().getClassLoader());
+            return Log4jLogAppender.isCoreLogger();
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * 把日志内容和异常堆栈拼接成一条日志
+     * @param message 日志内容
+     * @param thrown 异常，可以为null
+     * @return 日志文本
+     */
+    static String format(String message, Throwable thrown) {
+        if (thrown == null) {
+            return message;
+        }
+        StringWriter writer = new StringWriter();
+        thrown.printStackTrace(new PrintWriter(writer));
+        String stackTrace = writer.toString().stripTrailing();
+        return message == null || message.isEmpty() ? stackTrace : message + "\n" + stackTrace;
+    }
+
+    // 把java.util.logging的级别转换为log4j的名称，两种来源的日志使用同一套级别
+    private static String levelName(Level level) {
+        int value = level.intValue();
+        if (value >= Level.SEVERE.intValue()) {
+            return "ERROR";
+        } else if (value >= Level.WARNING.intValue()) {
+            return "WARN";
+        } else if (value >= Level.INFO.intValue()) {
+            return "INFO";
+        }
+        return "DEBUG";
+    }
+
+    /**
+     * java.util.logging根记录器上的处理器
+     */
+    private class JulHandler extends Handler {
+        @Override
+        public void publish(LogRecord record) {
+            if (record == null || !isLoggable(record)) {
+                return;
+            }
+            String message = record.getMessage();
+            if (message != null && record.getParameters() != null && record.getParameters().length > 0) {
+                try {
+                    message = java.text.MessageFormat.format(message, record.getParameters());
+                } catch (IllegalArgumentException e) {
+                    // 使用原始内容
+                }
+            }
+            String source = record.getLoggerName() == null ? "" : record.getLoggerName();
+            logListener.addLog(record.getMillis(), levelName(record.getLevel()), source,
+                    format(message, record.getThrown()), record.getLongThreadID());
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
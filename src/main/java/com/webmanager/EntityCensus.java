@@ -0,0 +1,304 @@
+package com.webmanager;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 实体统计
+ * 在主线程中分时扫描所有已加载的区块，每个tick最多处理固定数量的区块并且不超过时间预算，
+ * 不再为了读取数量而一次性获取整个世界的实体列表。一轮扫描结束后按世界、实体类型汇总，
+ * 并记录每个世界实体最密集的区块，结果不可变，通过volatile引用发布给HTTP线程读取。
+ *
+ * 注意：一轮扫描跨越多个tick，实体在扫描期间移动到已经扫描过的区块时可能少计或多计，
+ * 统计结果是近似值，用于发现实体异常聚集的区块已经足够。
+ */
+public class EntityCensus implements Runnable {
+
+    private final WebManager plugin;
+    private final int chunksPerTick;
+    private final long budgetNanos;
+    private final long passIntervalTicks;
+    private final int hotspotsPerWorld;
+    private volatile Result result = new Result(0, 0, Collections.emptyMap());
+    private BukkitTask task;
+
+    // 当前这一轮扫描的状态，只在主线程中访问
+    private List<Chunk> pending;
+    private int position;
+    private long passStartedAt;
+    private long idleTicks;
+    private Map<String, Tally> tallies;
+
+    public EntityCensus(WebManager plugin, int chunksPerTick, long budgetNanos, long passIntervalTicks, int hotspotsPerWorld) {
+        this.plugin = plugin;
+        this.chunksPerTick = chunksPerTick;
+        this.budgetNanos = budgetNanos;
+        this.passIntervalTicks = passIntervalTicks;
+        this.hotspotsPerWorld = hotspotsPerWorld;
+    }
+
+    public EntityCensus(WebManager plugin) {
+        // 默认每tick最多扫描64个区块、耗时不超过1毫秒，两轮扫描至少间隔5秒，每个世界保留32个最密集的区块
+        this(plugin, 64, TimeUnit.MILLISECONDS.toNanos(1), 100, 32);
+    }
+
+    // 启动每tick执行的扫描任务
+    public void start() {
+        idleTicks = passIntervalTicks;
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this, 1L, 1L);
+    }
+
+    // 停止扫描任务
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        pending = null;
+        tallies = null;
+    }
+
+    @Override
+    public void run() {
+        if (pending == null) {
+            // 上一轮结束后等待一段时间再开始下一轮
+            if (++idleTicks < passIntervalTicks) {
+                return;
+            }
+            beginPass();
+        }
+        long deadline = System.nanoTime() + budgetNanos;
+        int processed = 0;
+        while (position < pending.size() && processed < chunksPerTick) {
+            Chunk chunk = pending.get(position++);
+            // 扫描开始后被卸载的区块跳过
+            if (chunk.isLoaded()) {
+                scan(chunk);
+            }
+            processed++;
+            if (System.nanoTime() - deadline > 0) {
+                break;
+            }
+        }
+        if (position >= pending.size()) {
+            finishPass();
+        }
+    }
+
+    // 获取最近一轮完整扫描的结果，任何线程都可以调用
+    public Result getResult() {
+        return result;
+    }
+
+    private void beginPass() {
+        pending = new ArrayList<>();
+        tallies = new LinkedHashMap<>();
+        for (World world : Bukkit.getWorlds()) {
+            Collections.addAll(pending, world.getLoadedChunks());
+            tallies.put(world.getName(), new Tally(hotspotsPerWorld));
+        }
+        position = 0;
+        passStartedAt = System.currentTimeMillis();
+    }
+
+    private void scan(Chunk chunk) {
+        Tally tally = tallies.get(chunk.getWorld().getName());
+        if (tally == null) {
+            // 扫描期间新加载的世界下一轮再统计
+            return;
+        }
+        Entity[] entities = chunk.getEntities();
+        tally.chunks++;
+        tally.entities += entities.length;
+        for (Entity entity : entities) {
+            tally.types.merge(entity.getType().name(), 1, Integer::sum);
+        }
+        if (entities.length > 0 && tally.isHotspot(entities.length)) {
+            Map<String, Integer> types = new HashMap<>();
+            for (Entity entity : entities) {
+                types.merge(entity.getType().name(), 1, Integer::sum);
+            }
+            tally.offer(new ChunkCount(chunk.getX(), chunk.getZ(), entities.length, sortByCount(types)));
+        }
+    }
+
+    private void finishPass() {
+        Map<String, WorldCensus> worlds = new LinkedHashMap<>();
+        for (Map.Entry<String, Tally> entry : tallies.entrySet()) {
+            Tally tally = entry.getValue();
+            List<ChunkCount> hotspots = new ArrayList<>(tally.hotspots);
+            hotspots.sort((a, b) -> Integer.compare(b.entities, a.entities));
+            worlds.put(entry.getKey(), new WorldCensus(entry.getKey(), tally.entities, tally.chunks,
+                    sortByCount(tally.types), Collections.unmodifiableList(hotspots)));
+        }
+        result = new Result(passStartedAt, System.currentTimeMillis(), Collections.unmodifiableMap(worlds));
+        pending = null;
+        tallies = null;
+        idleTicks = 0;
+    }
+
+    // 按数量从多到少排列
+    private static Map<String, Integer> sortByCount(Map<String, Integer> counts) {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+        Map<String, Integer> sorted = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : entries) {
+            sorted.put(entry.getKey(), entry.getValue());
+        }
+        return Collections.unmodifiableMap(sorted);
+    }
+
+    /**
+     * 一个世界在扫描过程中的累计数据
+     */
+    private static final class Tally {
+        private final int maxHotspots;
+        // 实体最少的热点在堆顶，新的区块比它多时替换它
+        private final PriorityQueue<ChunkCount> hotspots =
+                new PriorityQueue<>((a, b) -> Integer.compare(a.entities, b.entities));
+        private final Map<String, Integer> types = new HashMap<>();
+        private int chunks;
+        private int entities;
+
+        Tally(int maxHotspots) {
+            this.maxHotspots = maxHotspots;
+        }
+
+        boolean isHotspot(int count) {
+            return hotspots.size() < maxHotspots || count > hotspots.peek().entities;
+        }
+
+        void offer(ChunkCount chunk) {
+            hotspots.add(chunk);
+            if (hotspots.size() > maxHotspots) {
+                hotspots.poll();
+            }
+        }
+    }
+
+    /**
+     * 一轮扫描的结果，创建后不再修改
+     */
+    public static final class Result {
+        private final long startedAt;
+        private final long completedAt;
+        private final Map<String, WorldCensus> worlds;
+
+        Result(long startedAt, long completedAt, Map<String, WorldCensus> worlds) {
+            this.startedAt = startedAt;
+            this.completedAt = completedAt;
+            this.worlds = worlds;
+        }
+
+        // 扫描开始的时间，还没有完成过扫描时为0
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        public long getCompletedAt() {
+            return completedAt;
+        }
+
+        // 按世界名称获取统计，世界不存在或者还没有扫描过时返回null
+        public WorldCensus getWorld(String name) {
+            return worlds.get(name);
+        }
+
+        // 所有世界的实体总数
+        public int getEntityCount() {
+            int total = 0;
+            for (WorldCensus world : worlds.values()) {
+                total += world.getEntities();
+            }
+            return total;
+        }
+    }
+
+    /**
+     * 单个世界的实体统计
+     */
+    public static final class WorldCensus {
+        private final String name;
+        private final int entities;
+        private final int chunks;
+        private final Map<String, Integer> types;
+        private final List<ChunkCount> hotspots;
+
+        WorldCensus(String name, int entities, int chunks, Map<String, Integer> types, List<ChunkCount> hotspots) {
+            this.name = name;
+            this.entities = entities;
+            this.chunks = chunks;
+            this.types = types;
+            this.hotspots = hotspots;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getEntities() {
+            return entities;
+        }
+
+        // 扫描的区块数量
+        public int getChunks() {
+            return chunks;
+        }
+
+        // 各实体类型的数量，从多到少排列
+        public Map<String, Integer> getTypes() {
+            return types;
+        }
+
+        // 实体最密集的区块，从多到少排列
+        public List<ChunkCount> getHotspots() {
+            return hotspots;
+        }
+    }
+
+    /**
+     * 单个区块的实体数量
+     */
+    public static final class ChunkCount {
+        private final int x;
+        private final int z;
+        private final int entities;
+        private final Map<String, Integer> types;
+
+        ChunkCount(int x, int z, int entities, Map<String, Integer> types) {
+            this.x = x;
+            this.z = z;
+            this.entities = entities;
+            this.types = types;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getZ() {
+            return z;
+        }
+
+        public int getEntities() {
+            return entities;
+        }
+
+        // 各实体类型的数量，从多到少排列
+        public Map<String, Integer> getTypes() {
+            return types;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.webmanager;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server-Sent Events推送中心
+ * 由一个共享的生产线程定时生成资源、玩家、世界和日志数据，只在内容变化时推送，
+ * 一次计算的结果分发给所有连接的浏览器。服务器日志只推送新增的部分，新连接的客户端
+ * 先收到最近的日志。每个客户端有独立的发送队列和写线程，慢客户端不会拖慢其他客户端。
+ * 事件帧只编码一次，所有客户端共享同一个字节数组。
+ */
+public class EventStreamHub {
+
+    private static final int CLIENT_QUEUE_SIZE = 64;
+    private static final long HEARTBEAT_MILLIS = 15000;
+    // 新连接的客户端先收到的最近日志条数
+    private static final int INITIAL_LOG_ENTRIES = 100;
+
+    private final WebManager plugin;
+    private final WebHttpServer httpServer;
+    private final long periodMillis;
+    private final int maxClients;
+    private final CopyOnWriteArrayList<Client> clients = new CopyOnWriteArrayList<>();
+    // 已经占用的连接名额，在发送响应头之前预留，客户端移除时释放
+    private final AtomicInteger reserved = new AtomicInteger();
+    // 每种事件最近一次推送的数据，新连接的客户端会先收到这些数据
+    private final Map<String, byte[]> latest = new LinkedHashMap<>();
+    private ScheduledExecutorService producer;
+    private long lastOperationLogRevision = -1;
+    // 已经推送的最后一条服务器日志的序号，只在持有latest锁时访问
+    private long lastLogSequence = -1;
+    private long lastHeartbeat;
+
+    public EventStreamHub(WebManager plugin, WebHttpServer httpServer, long periodMillis, int maxClients) {
+        this.plugin = plugin;
+        this.httpServer = httpServer;
+        this.periodMillis = periodMillis;
+        this.maxClients = maxClients;
+    }
+
+    public EventStreamHub(WebManager plugin, WebHttpServer httpServer) {
+        this(plugin, httpServer, 2000, 64); // 默认每2秒推送一次，最多64个连接
+    }
+
+    // 启动生产线程
+    public void start() {
+        producer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "WebManager-EventStream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        producer.scheduleAtFixedRate(this::produce, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // 停止生产线程并断开所有客户端
+    public void stop() {
+        if (producer != null) {
+            producer.shutdownNow();
+        }
+        for (Client client : clients) {
+            remove(client);
+        }
+    }
+
+    /**
+     * 接入一个新的事件流客户端，立即返回，不占用HTTP处理线程
+     * @param exchange HTTP请求
+     * @param clientIp 客户端IP
+     */
+    public void subscribe(HttpExchange exchange, String clientIp) throws IOException {
+        // 先预留名额再发送响应头，同时到达的请求不会超过连接数上限
+        if (reserved.incrementAndGet() > maxClients) {
+            reserved.decrementAndGet();
+            // 连接数已满，浏览器收到503后会退回到定时请求
+            exchange.getResponseHeaders().set("Retry-After", "30");
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+        Client client;
+        boolean added = false;
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.getResponseHeaders().set("X-Accel-Buffering", "no");
+            exchange.sendResponseHeaders(200, 0);
+
+            client = new Client(exchange, clientIp);
+            client.offer("retry: 3000\n\n".getBytes(StandardCharsets.UTF_8));
+            synchronized (latest) {
+                for (Map.Entry<String, byte[]> entry : latest.entrySet()) {
+                    client.offer(entry.getValue());
+                }
+                client.offer(recentLogsFrame());
+                clients.add(client);
+                added = true;
+            }
+        } finally {
+            // 没有加入客户端列表时释放名额，加入之后由remove释放
+            if (!added) {
+                reserved.decrementAndGet();
+            }
+        }
+        client.start();
+    }
+
+    // 获取当前连接的客户端数量
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    private void produce() {
+        try {
+            if (clients.isEmpty()) {
+                return;
+            }
+
+            // 授权过期的客户端直接断开
+            for (Client client : clients) {
+                if (!plugin.getIpAuthManager().isAuthorized(client.ip)) {
+                    remove(client);
+                }
+            }
+
+            publish("resources", jsonFrame("resources", httpServer::writeResourcesJson), true);
+            publish("players", jsonFrame("players", httpServer.getPlayersJson()), false);
+            publish("worlds", jsonFrame("worlds", httpServer.getWorldsJson()), false);
+            publishLogs();
+
+            long revision = plugin.getOperationLogger().getRevision();
+            if (revision != lastOperationLogRevision) {
+                lastOperationLogRevision = revision;
+                publish("operation-logs", textFrame("operation-logs", httpServer.buildOperationLogsText()), false);
+            }
+
+            long now = System.currentTimeMillis();
+            if (now - lastHeartbeat >= HEARTBEAT_MILLIS) {
+                lastHeartbeat = now;
+                broadcast(": ping\n\n".getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (Exception e) {
+            plugin.getLogger().warning("生成事件流数据失败: " + e.getMessage());
+        }
+    }
+
+    // 推送事件帧，内容没有变化时不推送
+    private void publish(String event, byte[] frame, boolean always) {
+        synchronized (latest) {
+            if (!always && Arrays.equals(frame, latest.get(event))) {
+                return;
+            }
+            latest.put(event, frame);
+        }
+        broadcast(frame);
+    }
+
+    // 推送上次之后新增的服务器日志，持有latest锁，保证新客户端收到的最近日志和后续推送不重复也不遗漏
+    private void publishLogs() throws IOException {
+        LogListener logListener = plugin.getLogListener();
+        synchronized (latest) {
+            if (logListener.getLatestSequence() == lastLogSequence) {
+                return;
+            }
+            long oldest = logListener.getOldestSequence();
+            List<LogListener.LogEntry> entries = logListener.getEntriesSince(lastLogSequence, 1000);
+            if (entries.isEmpty()) {
+                return;
+            }
+            long since = lastLogSequence;
+            byte[] frame = jsonFrame("logs", json -> httpServer.writeLogsJson(json, since, oldest, entries));
+            lastLogSequence = entries.get(entries.size() - 1).getSequence();
+            broadcast(frame);
+        }
+    }
+
+    // 生成最近日志的事件帧，只包含已经推送过的日志
+    private byte[] recentLogsFrame() throws IOException {
+        LogListener logListener = plugin.getLogListener();
+        long since = Math.max(-1, lastLogSequence - INITIAL_LOG_ENTRIES);
+        List<LogListener.LogEntry> entries = new ArrayList<>();
+        for (LogListener.LogEntry entry : logListener.getEntriesSince(since, INITIAL_LOG_ENTRIES)) {
+            if (entry.getSequence() <= lastLogSequence) {
+                entries.add(entry);
+            }
+        }
+        long oldest = logListener.getOldestSequence();
+        return jsonFrame("logs", json -> httpServer.writeLogsJson(json, since, oldest, entries));
+    }
+
+    private void broadcast(byte[] frame) {
+        for (Client client : clients) {
+            if (!client.offer(frame)) {
+                // 队列已满说明客户端长时间没有读取，断开它
+                remove(client);
+            }
+        }
+    }
+
+    private void remove(Client client) {
+        if (clients.remove(client)) {
+            reserved.decrementAndGet();
+            client.close();
+        }
+    }
+
+    // 按SSE格式编码JSON数据，转义后的JSON没有换行，只需要一个data字段
+    private static byte[] jsonFrame(String event, JsonWriter.Content content) throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(1024);
+        frame.write(("event: " + event + "\ndata: ").getBytes(StandardCharsets.UTF_8));
+        JsonWriter json = new JsonWriter(frame);
+        content.write(json);
+        json.flush();
+        frame.write('\n');
+        frame.write('\n');
+        return frame.toByteArray();
+    }
+
+    // 按SSE格式编码已经序列化的JSON
+    private static byte[] jsonFrame(String event, StaticAsset json) throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(json.getLength() + 64);
+        frame.write(("event: " + event + "\ndata: ").getBytes(StandardCharsets.UTF_8));
+        json.writeTo(frame);
+        frame.write('\n');
+        frame.write('\n');
+        return frame.toByteArray();
+    }
+
+    // 按SSE格式编码文本数据，多行数据拆成多个data字段
+    private static byte[] textFrame(String event, String data) {
+        StringBuilder frame = new StringBuilder();
+        frame.append("event: ").append(event).append('\n');
+        for (String line : data.split("\n", -1)) {
+            frame.append("data: ").append(line).append('\n');
+        }
+        frame.append('\n');
+        return frame.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 单个事件流客户端
+     */
+    private class Client implements Runnable {
+        private final HttpExchange exchange;
+        private final String ip;
+        private final OutputStream output;
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(CLIENT_QUEUE_SIZE);
+        private volatile boolean closed;
+        private Thread writer;
+
+        Client(HttpExchange exchange, String ip) {
+            this.exchange = exchange;
+            this.ip = ip;
+            this.output = exchange.getResponseBody();
+        }
+
+        void start() {
+            writer = Thread.ofVirtual().name("WebManager-EventStream-" + ip).start(this);
+        }
+
+        boolean offer(byte[] frame) {
+            return !closed && queue.offer(frame);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    byte[] frame = queue.take();
+                    output.write(frame);
+                    output.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                // 客户端断开连接
+            } finally {
+                remove(this);
+            }
+        }
+
+        void close() {
+            closed = true;
+            if (writer != null) {
+                writer.interrupt();
+            }
+            exchange.close();
+        }
+    }
+}
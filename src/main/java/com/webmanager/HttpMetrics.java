@@ -0,0 +1,166 @@
+package com.webmanager;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP请求统计
+ * 按处理器（上下文路径）记录各状态码的请求数和处理耗时分布，另外记录命令执行结果和等待主线程的耗时。
+ * 计数全部使用LongAdder，请求线程之间没有竞争，导出时直接读取当前值。
+ */
+public class HttpMetrics extends Filter {
+
+    // 耗时分布的上限（秒），与Prometheus客户端的默认分桶一致
+    static final double[] LATENCY_BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    public static final String COMMAND_SUCCESS = "success";
+    public static final String COMMAND_FAILURE = "failure";
+    public static final String COMMAND_TIMEOUT = "timeout";
+
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private final Histogram syncCalls = new Histogram(LATENCY_BUCKETS);
+    private final LongAdder syncTimeouts = new LongAdder();
+    private final Map<String, LongAdder> commands = new ConcurrentHashMap<>();
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            Route route = routes.computeIfAbsent(exchange.getHttpContext().getPath(), path -> new Route());
+            // 没有发送响应头就结束的请求（例如处理器抛出异常）记为0
+            route.count(Math.max(0, exchange.getResponseCode()));
+            route.latency.observe(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public String description() {
+        return "统计HTTP请求数和处理耗时";
+    }
+
+    /**
+     * 记录一次等待主线程执行的耗时
+     * @param nanos 从提交任务到拿到结果（或超时）的纳秒数
+     * @param timedOut 是否超时
+     */
+    public void recordSyncCall(long nanos, boolean timedOut) {
+        syncCalls.observe(nanos);
+        if (timedOut) {
+            syncTimeouts.increment();
+        }
+    }
+
+    /**
+     * 记录一次命令执行
+     * @param result 执行结果，COMMAND_SUCCESS、COMMAND_FAILURE或COMMAND_TIMEOUT
+     */
+    public void recordCommand(String result) {
+        commands.computeIfAbsent(result, key -> new LongAdder()).increment();
+    }
+
+    // 按处理器路径获取统计，键为上下文路径
+    public Map<String, Route> getRoutes() {
+        return routes;
+    }
+
+    // 等待主线程执行的耗时分布
+    public Histogram getSyncCalls() {
+        return syncCalls;
+    }
+
+    // 等待主线程超时的次数
+    public long getSyncTimeoutCount() {
+        return syncTimeouts.sum();
+    }
+
+    // 按结果统计的命令执行次数
+    public Map<String, LongAdder> getCommands() {
+        return commands;
+    }
+
+    /**
+     * 单个处理器的统计
+     */
+    public static final class Route {
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final Histogram latency = new Histogram(LATENCY_BUCKETS);
+
+        void count(int status) {
+            statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+        }
+
+        // 按状态码统计的请求数
+        public Map<Integer, LongAdder> getStatuses() {
+            return statuses;
+        }
+
+        // 处理耗时分布
+        public Histogram getLatency() {
+            return latency;
+        }
+    }
+
+    /**
+     * 固定分桶的耗时分布，每个桶只记录落在该区间的次数，导出时再累加
+     */
+    public static final class Histogram {
+        private final double[] bounds;
+        private final long[] boundNanos;
+        private final LongAdder[] buckets;
+        private final LongAdder sumNanos = new LongAdder();
+
+        Histogram(double[] bounds) {
+            this.bounds = bounds;
+            this.boundNanos = new long[bounds.length];
+            // 最后一个桶对应+Inf
+            this.buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < bounds.length; i++) {
+                boundNanos[i] = (long) (bounds[i] * TimeUnit.SECONDS.toNanos(1));
+            }
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void observe(long nanos) {
+            int index = 0;
+            while (index < boundNanos.length && nanos > boundNanos[index]) {
+                index++;
+            }
+            buckets[index].increment();
+            sumNanos.add(nanos);
+        }
+
+        // 各桶的上限（秒），不包括+Inf
+        public double[] getBounds() {
+            return bounds;
+        }
+
+        /**
+         * 获取累计次数
+         * @return 长度为桶数量加一的数组，第i个元素是耗时不超过第i个上限的次数，最后一个元素是总次数
+         */
+        public long[] getCumulativeCounts() {
+            long[] counts = new long[buckets.length];
+            long total = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                total += buckets[i].sum();
+                counts[i] = total;
+            }
+            return counts;
+        }
+
+        // 耗时总和（秒）
+        public double getSumSeconds() {
+            return sumNanos.sum() / 1e9;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.webmanager;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * IP地址和网段的解析工具
+ * 只解析字面量地址，不会进行DNS查询。IPv4映射的IPv6地址（::ffff:a.b.c.d）统一转换为IPv4。
+ */
+public final class IpAddresses {
+
+    private IpAddresses() {
+    }
+
+    /**
+     * 解析IP地址字面量，可以带端口或方括号，例如X-Forwarded-For中的"1.2.3.4:5678"和"[::1]:443"
+     * @param text 地址文本
+     * @return 4字节或16字节的地址，格式错误时返回null
+     */
+    public static byte[] parse(String text) {
+        if (text == null) {
+            return null;
+        }
+        String value = text.trim();
+        if (value.startsWith("[")) {
+            int close = value.indexOf(']');
+            if (close < 0) {
+                return null;
+            }
+            value = value.substring(1, close);
+        } else {
+            int colon = value.indexOf(':');
+            if (colon >= 0 && colon == value.lastIndexOf(':') && value.indexOf('.') >= 0) {
+                // 只有一个冒号的IPv4地址后面是端口
+                value = value.substring(0, colon);
+            }
+        }
+        int zone = value.indexOf('%');
+        if (zone >= 0) {
+            value = value.substring(0, zone);
+        }
+        byte[] address = value.indexOf(':') >= 0 ? parseIpv6(value) : parseIpv4(value, 0, value.length());
+        return address == null ? null : unmap(address);
+    }
+
+    /**
+     * 解析网段，格式为"地址/前缀长度"，不带前缀长度时表示单个地址，主机位会被清零
+     * @param text 网段文本
+     * @return 网段
+     * @throws IllegalArgumentException 格式错误
+     */
+    public static Cidr parseCidr(String text) {
+        String value = text.trim();
+        int slash = value.indexOf('/');
+        byte[] address = parse(slash >= 0 ? value.substring(0, slash) : value);
+        if (address == null) {
+            throw new IllegalArgumentException("无效的IP地址: " + text);
+        }
+        int bits = address.length * 8;
+        int prefix = bits;
+        if (slash >= 0) {
+            try {
+                prefix = Integer.parseInt(value.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("无效的前缀长度: " + text);
+            }
+            // IPv4映射地址的前缀长度按IPv4计算
+            if (address.length == 4 && value.indexOf(':') >= 0 && prefix >= 96) {
+                prefix -= 96;
+            }
+            if (prefix < 0 || prefix > bits) {
+                throw new IllegalArgumentException("无效的前缀长度: " + text);
+            }
+        }
+        for (int bit = prefix; bit < bits; bit++) {
+            address[bit >> 3] &= (byte) ~(0x80 >>> (bit & 7));
+        }
+        return new Cidr(address, prefix);
+    }
+
+    // 把IPv4映射的IPv6地址转换为IPv4地址
+    static byte[] unmap(byte[] address) {
+        if (address.length != 16) {
+            return address;
+        }
+        for (int i = 0; i < 10; i++) {
+            if (address[i] != 0) {
+                return address;
+            }
+        }
+        if (address[10] != (byte) 0xff || address[11] != (byte) 0xff) {
+            return address;
+        }
+        return new byte[] {address[12], address[13], address[14], address[15]};
+    }
+
+    private static byte[] parseIpv4(String text, int start, int end) {
+        byte[] address = new byte[4];
+        int part = 0;
+        int value = -1;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) {
+                    return null;
+                }
+            } else if (c == '.' && value >= 0 && part < 3) {
+                address[part++] = (byte) value;
+                value = -1;
+            } else {
+                return null;
+            }
+        }
+        if (part != 3 || value < 0) {
+            return null;
+        }
+        address[3] = (byte) value;
+        return address;
+    }
+
+    private static byte[] parseIpv6(String text) {
+        byte[] address = new byte[16];
+        int gap = text.indexOf("::");
+        if (gap >= 0 && text.indexOf("::", gap + 1) >= 0) {
+            return null;
+        }
+        // "::"前面的部分从前往后填，后面的部分从后往前填
+        int headEnd = gap >= 0 ? gap : text.length();
+        int written = parseGroups(text, 0, headEnd, address, 0, gap < 0);
+        if (written < 0) {
+            return null;
+        }
+        if (gap < 0) {
+            return written == 16 ? address : null;
+        }
+        byte[] tail = new byte[16];
+        int tailWritten = parseGroups(text, gap + 2, text.length(), tail, 0, true);
+        if (tailWritten < 0 || written + tailWritten > 14) {
+            return null;
+        }
+        System.arraycopy(tail, 0, address, 16 - tailWritten, tailWritten);
+        return address;
+    }
+
+    // 解析以冒号分隔的十六进制分组，最后一组可以是IPv4地址，返回写入的字节数，格式错误时返回-1
+    private static int parseGroups(String text, int start, int end, byte[] target, int offset, boolean allowIpv4) {
+        if (start == end) {
+            return 0;
+        }
+        int position = offset;
+        int groupStart = start;
+        while (groupStart <= end) {
+            int groupEnd = text.indexOf(':', groupStart);
+            if (groupEnd < 0 || groupEnd > end) {
+                groupEnd = end;
+            }
+            if (groupEnd == end && allowIpv4 && text.indexOf('.', groupStart) >= 0 && text.indexOf('.', groupStart) < end) {
+                byte[] ipv4 = parseIpv4(text, groupStart, end);
+                if (ipv4 == null || position + 4 > target.length) {
+                    return -1;
+                }
+                System.arraycopy(ipv4, 0, target, position, 4);
+                return position + 4 - offset;
+            }
+            int length = groupEnd - groupStart;
+            if (length < 1 || length > 4 || position + 2 > target.length) {
+                return -1;
+            }
+            int value = 0;
+            for (int i = groupStart; i < groupEnd; i++) {
+                int digit = Character.digit(text.charAt(i), 16);
+                if (digit < 0) {
+                    return -1;
+                }
+                value = (value << 4) | digit;
+            }
+            target[position++] = (byte) (value >>> 8);
+            target[position++] = (byte) value;
+            if (groupEnd == end) {
+                break;
+            }
+            groupStart = groupEnd + 1;
+        }
+        return position - offset;
+    }
+
+    /**
+     * 网段
+     */
+    public static final class Cidr {
+        private final byte[] address;
+        private final int prefixLength;
+
+        Cidr(byte[] address, int prefixLength) {
+            this.address = address;
+            this.prefixLength = prefixLength;
+        }
+
+        public byte[] getAddress() {
+            return address.clone();
+        }
+
+        public int getPrefixLength() {
+            return prefixLength;
+        }
+
+        // 是否只包含一个地址
+        public boolean isSingleAddress() {
+            return prefixLength == address.length * 8;
+        }
+
+        /**
+         * 判断地址是否在网段中
+         * @param other 4字节或16字节的地址，IPv4映射的IPv6地址需要先转换
+         * @return 是否在网段中，地址类型不同时返回false
+         */
+        public boolean contains(byte[] other) {
+            if (other.length != address.length) {
+                return false;
+            }
+            int bytes = prefixLength >> 3;
+            for (int i = 0; i < bytes; i++) {
+                if (other[i] != address[i]) {
+                    return false;
+                }
+            }
+            int bits = prefixLength & 7;
+            if (bits == 0) {
+                return true;
+            }
+            int mask = 0xff << (8 - bits) & 0xff;
+            return (other[bytes] & mask) == (address[bytes] & mask);
+        }
+
+        // 规范格式，单个地址不带前缀长度
+        @Override
+        public String toString() {
+            String host;
+            try {
+                host = InetAddress.getByAddress(address).getHostAddress();
+            } catch (UnknownHostException e) {
+                throw new IllegalStateException(e);
+            }
+            return isSingleAddress() ? host : host + "/" + prefixLength;
+        }
+    }
+}
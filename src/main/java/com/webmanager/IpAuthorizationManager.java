@@ -2,36 +2,87 @@ package com.webmanager;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * IP授权管理
+ * 授权可以是单个地址，也可以是IPv4/IPv6网段（CIDR）。授权列表保存在ConcurrentHashMap中，
+ * 每次修改后重新生成不可变的前缀树，请求线程检查授权时只在当前的前缀树中查找，不加锁。
+ * 每个授权在过期时刻由后台线程移除（调度器内部按时间排序的延迟队列），
+ * 修改后的配置在短暂延迟后合并写入文件，不在请求线程上读写磁盘。
+ */
 public class IpAuthorizationManager {
 
+    // 修改配置后延迟保存的时间，期间的多次修改只写一次文件
+    private static final long SAVE_DELAY_MILLIS = 1000;
+
     private final Map<String, Long> authorizedIps;
     private final AuthConfigManager authConfigManager;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean savePending = new AtomicBoolean();
+    // 当前授权列表对应的前缀树，修改授权时整体替换
+    private volatile IpMatcher matcher;
 
     public IpAuthorizationManager(WebManager plugin) {
         this.authConfigManager = new AuthConfigManager(plugin);
-        this.authorizedIps = authConfigManager.loadAuthConfig();
+        this.authorizedIps = new ConcurrentHashMap<>();
+        // 配置文件中的地址统一转换为规范格式
+        for (Map.Entry<String, Long> entry : authConfigManager.loadAuthConfig().entrySet()) {
+            try {
+                authorizedIps.merge(IpAddresses.parseCidr(entry.getKey()).toString(), entry.getValue(), Math::max);
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().warning("跳过无效的授权配置: " + entry.getKey());
+            }
+        }
+        this.matcher = IpMatcher.build(authorizedIps);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "WebManager-Auth");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 为已有的授权安排过期时间，启动前就已经过期的会立即移除
+        for (Map.Entry<String, Long> entry : authorizedIps.entrySet()) {
+            scheduleExpiry(entry.getKey(), entry.getValue());
+        }
     }
 
     /**
      * 添加授权IP
-     * @param ip IP地址
+     * @param ip IP地址或网段，例如192.168.1.0/24
      * @param days 授权天数
+     * @return 规范格式的地址或网段
+     * @throws IllegalArgumentException 地址格式错误
      */
-    public void addAuthorizedIp(String ip, int days) {
+    public String addAuthorizedIp(String ip, int days) {
+        String key = IpAddresses.parseCidr(ip).toString();
         long expirationTime = System.currentTimeMillis() + TimeUnit.DAYS.toMillis(days);
-        authorizedIps.put(ip, expirationTime);
-        saveConfig();
+        authorizedIps.put(key, expirationTime);
+        scheduleExpiry(key, expirationTime);
+        changed();
+        return key;
     }
 
     /**
      * 移除授权IP
-     * @param ip IP地址
+     * @param ip IP地址或网段
+     * @return 是否存在该授权
      */
-    public void removeAuthorizedIp(String ip) {
-        authorizedIps.remove(ip);
-        saveConfig();
+    public boolean removeAuthorizedIp(String ip) {
+        String key;
+        try {
+            key = IpAddresses.parseCidr(ip).toString();
+        } catch (IllegalArgumentException e) {
+            key = ip;
+        }
+        if (authorizedIps.remove(key) != null) {
+            changed();
+            return true;
+        }
+        return false;
     }
 
     /**
@@ -40,19 +91,18 @@ public class IpAuthorizationManager {
      * @return 是否授权
      */
     public boolean isAuthorized(String ip) {
-        if (!authorizedIps.containsKey(ip)) {
-            return false;
-        }
-
-        long expirationTime = authorizedIps.get(ip);
-        if (System.currentTimeMillis() > expirationTime) {
-            // 授权已过期，移除
-            authorizedIps.remove(ip);
-            saveConfig();
-            return false;
-        }
+        byte[] address = IpAddresses.parse(ip);
+        return address != null && isAuthorized(address);
+    }
 
-        return true;
+    /**
+     * 检查地址是否在已授权的地址或网段中
+     * @param address 4字节或16字节的地址
+     * @return 是否授权
+     */
+    public boolean isAuthorized(byte[] address) {
+        // 过期的授权由后台线程移除，这里只判断不修改
+        return System.currentTimeMillis() <= matcher.getExpiration(address);
     }
 
     /**
@@ -64,20 +114,40 @@ public class IpAuthorizationManager {
     }
 
     /**
-     * 清理过期的授权IP
+     * 停止后台线程，把还没有保存的修改写入文件
      */
-    public void cleanupExpired() {
-        long currentTime = System.currentTimeMillis();
-        boolean changed = authorizedIps.entrySet().removeIf(entry -> entry.getValue() < currentTime);
-        if (changed) {
-            saveConfig();
+    public void close() {
+        scheduler.shutdownNow();
+        if (savePending.getAndSet(false)) {
+            authConfigManager.saveAuthConfig(authorizedIps);
         }
     }
 
+    // 在过期时刻移除授权，授权期间被续期或移除时什么也不做
+    private void scheduleExpiry(String ip, long expirationTime) {
+        long delay = Math.max(0, expirationTime - System.currentTimeMillis());
+        scheduler.schedule(() -> {
+            if (authorizedIps.remove(ip, expirationTime)) {
+                changed();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    // 授权列表修改后重新生成前缀树并保存，同步执行保证最后发布的前缀树包含所有修改
+    private synchronized void changed() {
+        matcher = IpMatcher.build(authorizedIps);
+        saveConfig();
+    }
+
     /**
-     * 保存配置到文件
+     * 延迟保存配置到文件
      */
     private void saveConfig() {
-        authConfigManager.saveAuthConfig(authorizedIps);
+        if (savePending.compareAndSet(false, true)) {
+            scheduler.schedule(() -> {
+                savePending.set(false);
+                authConfigManager.saveAuthConfig(authorizedIps);
+            }, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
     }
 }
@@ -0,0 +1,122 @@
+package com.webmanager;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 授权网段的前缀树
+ * IPv4和IPv6各一棵按地址位逐位分叉的二叉树，节点保存在数组中，创建后不再修改。
+ * 查找时沿地址的每一位向下走，记录经过的网段中最晚的过期时间，
+ * 耗时只与地址位数有关，并且不分配内存。
+ */
+public final class IpMatcher {
+
+    private final Trie ipv4;
+    private final Trie ipv6;
+
+    private IpMatcher(Trie ipv4, Trie ipv6) {
+        this.ipv4 = ipv4;
+        this.ipv6 = ipv6;
+    }
+
+    /**
+     * 根据授权列表创建前缀树
+     * @param authorizedIps 键为规范格式的地址或网段，值为过期时间
+     * @return 前缀树
+     */
+    public static IpMatcher build(Map<String, Long> authorizedIps) {
+        Trie ipv4 = new Trie();
+        Trie ipv6 = new Trie();
+        for (Map.Entry<String, Long> entry : authorizedIps.entrySet()) {
+            IpAddresses.Cidr cidr;
+            try {
+                cidr = IpAddresses.parseCidr(entry.getKey());
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            byte[] address = cidr.getAddress();
+            (address.length == 4 ? ipv4 : ipv6).insert(address, cidr.getPrefixLength(), entry.getValue());
+        }
+        return new IpMatcher(ipv4, ipv6);
+    }
+
+    /**
+     * 获取地址所在的授权网段中最晚的过期时间
+     * @param address 4字节或16字节的地址，IPv4映射的IPv6地址按IPv4查找
+     * @return 过期时间，没有匹配的网段时返回0
+     */
+    public long getExpiration(byte[] address) {
+        if (address.length == 4) {
+            return ipv4.find(address, 0);
+        }
+        if (address.length == 16 && isIpv4Mapped(address)) {
+            return ipv4.find(address, 12);
+        }
+        return ipv6.find(address, 0);
+    }
+
+    private static boolean isIpv4Mapped(byte[] address) {
+        for (int i = 0; i < 10; i++) {
+            if (address[i] != 0) {
+                return false;
+            }
+        }
+        return address[10] == (byte) 0xff && address[11] == (byte) 0xff;
+    }
+
+    // 数组形式的二叉前缀树，0号节点是根节点，子节点编号为0表示没有子节点
+    private static final class Trie {
+        private int[] zero = new int[16];
+        private int[] one = new int[16];
+        private long[] expiration = new long[16];
+        private int size = 1;
+
+        void insert(byte[] address, int prefixLength, long expirationTime) {
+            int node = 0;
+            for (int bit = 0; bit < prefixLength; bit++) {
+                boolean isZero = bitAt(address, 0, bit) == 0;
+                int child = isZero ? zero[node] : one[node];
+                if (child == 0) {
+                    // 先分配节点再写入，newNode扩容后数组会被替换
+                    child = newNode();
+                    if (isZero) {
+                        zero[node] = child;
+                    } else {
+                        one[node] = child;
+                    }
+                }
+                node = child;
+            }
+            expiration[node] = Math.max(expiration[node], expirationTime);
+        }
+
+        long find(byte[] address, int offset) {
+            int bits = (address.length - offset) * 8;
+            long best = expiration[0];
+            int node = 0;
+            for (int bit = 0; bit < bits; bit++) {
+                node = bitAt(address, offset, bit) == 0 ? zero[node] : one[node];
+                if (node == 0) {
+                    break;
+                }
+                if (expiration[node] > best) {
+                    best = expiration[node];
+                }
+            }
+            return best;
+        }
+
+        private int newNode() {
+            if (size == zero.length) {
+                zero = Arrays.copyOf(zero, size * 2);
+                one = Arrays.copyOf(one, size * 2);
+                expiration = Arrays.copyOf(expiration, size * 2);
+            }
+            return size++;
+        }
+
+        private static int bitAt(byte[] address, int offset, int bit) {
+            return (address[offset + (bit >> 3)] >>> (7 - (bit & 7))) & 1;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.webmanager;
+
+/**
+ * 简单的JSON读取
+ * 按顺序读取请求体中的数组和字符串，只支持接口需要的结构，格式错误时抛出IllegalArgumentException，
+ * 由处理器返回400。同一个读取器只能在一个线程中使用。
+ */
+public final class JsonReader {
+
+    private final String text;
+    private int position;
+    // 当前数组是否已经读过元素，决定下一个元素前是否需要逗号
+    private boolean hasElements;
+
+    public JsonReader(String text) {
+        this.text = text;
+    }
+
+    public void beginArray() {
+        expect('[');
+        hasElements = false;
+    }
+
+    public void endArray() {
+        expect(']');
+    }
+
+    // 当前数组是否还有元素
+    public boolean hasNext() {
+        skipWhitespace();
+        return position < text.length() && text.charAt(position) != ']';
+    }
+
+    // 读取一个字符串元素
+    public String nextString() {
+        if (hasElements) {
+            expect(',');
+        }
+        hasElements = true;
+        expect('"');
+        StringBuilder value = new StringBuilder();
+        while (true) {
+            if (position >= text.length()) {
+                throw error("字符串没有结束");
+            }
+            char c = text.charAt(position++);
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c == '\\') {
+                value.append(readEscape());
+            } else if (c < 0x20) {
+                throw error("字符串中有未转义的控制字符");
+            } else {
+                value.append(c);
+            }
+        }
+    }
+
+    // 确认后面只有空白
+    public void endDocument() {
+        skipWhitespace();
+        if (position < text.length()) {
+            throw error("多余的内容");
+        }
+    }
+
+    private char readEscape() {
+        if (position >= text.length()) {
+            throw error("字符串没有结束");
+        }
+        char c = text.charAt(position++);
+        switch (c) {
+            case '"': return '"';
+            case '\\': return '\\';
+            case '/': return '/';
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'u':
+                if (position + 4 > text.length()) {
+                    throw error("无效的\\u转义");
+                }
+                try {
+                    char unicode = (char) Integer.parseInt(text.substring(position, position + 4), 16);
+                    position += 4;
+                    return unicode;
+                } catch (NumberFormatException e) {
+                    throw error("无效的\\u转义");
+                }
+            default:
+                throw error("无效的转义字符: \\" + c);
+        }
+    }
+
+    private void expect(char expected) {
+        skipWhitespace();
+        if (position >= text.length() || text.charAt(position) != expected) {
+            throw error("应为 '" + expected + "'");
+        }
+        position++;
+    }
+
+    private void skipWhitespace() {
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                break;
+            }
+            position++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("无效的JSON（位置 " + position + "）: " + message);
+    }
+}
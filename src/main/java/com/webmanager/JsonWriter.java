@@ -0,0 +1,271 @@
+package com.webmanager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 流式JSON输出
+ * 直接把字符编码为UTF-8写入缓冲区，缓冲区满时写入输出流，不生成中间字符串。
+ * 逗号由写入器根据嵌套层级自动添加，字符串按JSON规范转义。
+ * 同一个写入器只能在一个线程中使用。
+ */
+public final class JsonWriter implements Closeable {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream output;
+    private final byte[] buffer;
+    private int position;
+    // 每一层是否已经写过元素，决定下一个元素前是否需要逗号
+    private boolean[] hasElements = new boolean[16];
+    private int depth;
+    // 刚写完字段名，下一个值前不需要逗号
+    private boolean afterName;
+
+    public JsonWriter(OutputStream output, int bufferSize) {
+        this.output = output;
+        // 数字需要一次写入缓冲区，缓冲区至少要能容纳最长的数字
+        this.buffer = new byte[Math.max(64, bufferSize)];
+    }
+
+    public JsonWriter(OutputStream output) {
+        this(output, 1024); // 默认缓冲1KB
+    }
+
+    /**
+     * 生成JSON字符串，用于需要保存或者再次包装的内容
+     * @param content 写入内容的方法
+     * @return JSON字符串
+     */
+    public static String toJson(Content content) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        try (JsonWriter json = new JsonWriter(bytes)) {
+            content.write(json);
+        } catch (IOException e) {
+            // 写入内存不会失败，只可能是内容方法本身抛出
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    // 写入字段名，后面必须紧跟一个值
+    public JsonWriter name(String name) throws IOException {
+        separator();
+        writeString(name);
+        writeByte(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        separator();
+        writeString(value);
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        separator();
+        writeAscii(Long.toString(value));
+        return this;
+    }
+
+    // NaN和无穷大不是合法的JSON数字，输出为null
+    public JsonWriter value(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return nullValue();
+        }
+        separator();
+        writeAscii(Double.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        separator();
+        writeBytes(value ? TRUE : FALSE);
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        separator();
+        writeBytes(NULL);
+        return this;
+    }
+
+    // 把缓冲区中的内容写入输出流
+    public void flush() throws IOException {
+        flushBuffer();
+        output.flush();
+    }
+
+    // 写出剩余内容并关闭输出流
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        output.close();
+    }
+
+    private JsonWriter open(char bracket) throws IOException {
+        separator();
+        writeByte(bracket);
+        if (++depth == hasElements.length) {
+            hasElements = Arrays.copyOf(hasElements, depth * 2);
+        }
+        hasElements[depth] = false;
+        return this;
+    }
+
+    private JsonWriter close(char bracket) throws IOException {
+        if (depth == 0) {
+            throw new IllegalStateException("没有需要结束的对象或数组");
+        }
+        depth--;
+        writeByte(bracket);
+        return this;
+    }
+
+    // 在同一层的元素之间写入逗号
+    private void separator() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (hasElements[depth]) {
+            writeByte(',');
+        } else {
+            hasElements[depth] = true;
+        }
+    }
+
+    // 写入带引号的字符串，按UTF-8编码，控制字符、引号、反斜杠和单独的代理字符使用转义
+    private void writeString(String value) throws IOException {
+        writeByte('"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    writeByte(c);
+                    continue;
+                }
+                switch (c) {
+                    case '"': writeByte('\\'); writeByte('"'); break;
+                    case '\\': writeByte('\\'); writeByte('\\'); break;
+                    case '\n': writeByte('\\'); writeByte('n'); break;
+                    case '\r': writeByte('\\'); writeByte('r'); break;
+                    case '\t': writeByte('\\'); writeByte('t'); break;
+                    case '\b': writeByte('\\'); writeByte('b'); break;
+                    case '\f': writeByte('\\'); writeByte('f'); break;
+                    default: writeUnicodeEscape(c);
+                }
+            } else if (c < 0x800) {
+                ensure(2);
+                buffer[position++] = (byte) (0xc0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    ensure(4);
+                    buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else {
+                    // 单独的代理字符无法编码为UTF-8，保留为转义
+                    writeUnicodeEscape(c);
+                }
+            } else {
+                // U+2028和U+2029在JavaScript字符串中是换行符，转义后可以安全地嵌入脚本
+                if (c == '\u2028' || c == '\u2029') {
+                    writeUnicodeEscape(c);
+                    continue;
+                }
+                ensure(3);
+                buffer[position++] = (byte) (0xe0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        writeByte('"');
+    }
+
+    private void writeUnicodeEscape(char c) throws IOException {
+        ensure(6);
+        buffer[position++] = '\\';
+        buffer[position++] = 'u';
+        buffer[position++] = HEX[(c >> 12) & 0xf];
+        buffer[position++] = HEX[(c >> 8) & 0xf];
+        buffer[position++] = HEX[(c >> 4) & 0xf];
+        buffer[position++] = HEX[c & 0xf];
+    }
+
+    // 写入只包含ASCII字符的文本，例如数字
+    private void writeAscii(String text) throws IOException {
+        int length = text.length();
+        ensure(length);
+        for (int i = 0; i < length; i++) {
+            buffer[position++] = (byte) text.charAt(i);
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    // 保证缓冲区还有count字节的空间，count不会超过缓冲区大小
+    private void ensure(int count) throws IOException {
+        if (buffer.length - position < count) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            output.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    /**
+     * 写入JSON内容的方法
+     */
+    @FunctionalInterface
+    public interface Content {
+        void write(JsonWriter json) throws IOException;
+    }
+}
@@ -0,0 +1,52 @@
+package com.webmanager;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.Logger;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.Property;
+
+/**
+ * 添加到log4j根记录器上的appender，把服务器控制台日志写入LogListener
+ * 只能在确认log4j-core存在后通过ConsoleLogCapture加载
+ */
+public class Log4jLogAppender extends AbstractAppender {
+
+    private final LogListener logListener;
+
+    private Log4jLogAppender(LogListener logListener) {
+        super("WebManager-Console", null, null, true, Property.EMPTY_ARRAY);
+        this.logListener = logListener;
+    }
+
+    // 判断当前的根记录器是否由log4j-core实现
+    static boolean isCoreLogger() {
+        return LogManager.getRootLogger() instanceof Logger;
+    }
+
+    /**
+     * 创建appender并添加到根记录器
+     * @param logListener 日志缓冲
+     * @return 已添加的appender
+     */
+    static Log4jLogAppender install(LogListener logListener) {
+        Log4jLogAppender appender = new Log4jLogAppender(logListener);
+        appender.start();
+        ((Logger) LogManager.getRootLogger()).addAppender(appender);
+        return appender;
+    }
+
+    // 从根记录器移除
+    void uninstall() {
+        ((Logger) LogManager.getRootLogger()).removeAppender(this);
+        stop();
+    }
+
+    @Override
+    public void append(LogEvent event) {
+        String message = event.getMessage() == null ? "" : event.getMessage().getFormattedMessage();
+        String source = event.getLoggerName() == null ? "" : event.getLoggerName();
+        logListener.addLog(event.getTimeMillis(), event.getLevel().name(), source,
+                ConsoleLogCapture.format(message, event.getThrown()), event.getThreadId());
+    }
+}
@@ -5,18 +5,37 @@ import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.server.ServerCommandEvent;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * 服务器日志监听器
+ * 日志保存在固定容量的环形缓冲中，每条日志有一个递增的序号，写入时先领取序号再写入对应的槽位，
+ * 不加锁也不复制数组。日志条目不可变并且带有自己的序号，读取时槽位中的序号与期望的一致
+ * 才说明没有被新日志覆盖，读取不会阻塞写入。
+ * 注册后会同时接入服务器控制台日志，插件警告、异常、聊天和进出服务器的消息都会记录。
+ */
 public class LogListener implements Listener {
 
-    private final List<String> logBuffer;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
     private final int maxBufferSize;
+    private final AtomicReferenceArray<LogEntry> entries;
+    // 下一条日志的序号
+    private final AtomicLong nextSequence = new AtomicLong();
+    // 清空日志时记录的序号，更早的日志不再返回
+    private volatile long clearedBefore;
+    private ConsoleLogCapture consoleCapture;
 
     public LogListener(int maxBufferSize) {
-        this.logBuffer = new CopyOnWriteArrayList<>();
         this.maxBufferSize = maxBufferSize;
+        this.entries = new AtomicReferenceArray<>(maxBufferSize);
     }
 
     public LogListener() {
@@ -31,43 +50,153 @@ public class LogListener implements Listener {
 
     // 添加日志到缓冲区
     public void addLog(String message) {
-        synchronized (logBuffer) {
-            logBuffer.add(message);
-            if (logBuffer.size() > maxBufferSize) {
-                logBuffer.remove(0);
-            }
-        }
+        addLog(System.currentTimeMillis(), "INFO", "WebManager", message);
+    }
+
+    // 添加当前线程产生的日志到缓冲区
+    public void addLog(long time, String level, String source, String message) {
+        addLog(time, level, source, message, Thread.currentThread().threadId());
+    }
+
+    /**
+     * 添加日志到缓冲区，可以在任意线程调用
+     * @param time 日志时间（毫秒时间戳）
+     * @param level 日志级别
+     * @param source 日志来源（记录器名称）
+     * @param message 日志内容
+     * @param threadId 产生日志的线程ID，异步日志由其他线程写入时使用日志事件中记录的线程
+     */
+    public void addLog(long time, String level, String source, String message, long threadId) {
+        long sequence = nextSequence.getAndIncrement();
+        entries.set((int) (sequence % maxBufferSize), new LogEntry(sequence, time, level, source, message, threadId));
     }
 
     // 获取所有日志
     public List<String> getLogs() {
-        return new ArrayList<>(logBuffer);
+        return getRecentLogs(maxBufferSize);
     }
 
     // 获取最近的n条日志
     public List<String> getRecentLogs(int count) {
-        synchronized (logBuffer) {
-            int startIndex = Math.max(0, logBuffer.size() - count);
-            return new ArrayList<>(logBuffer.subList(startIndex, logBuffer.size()));
+        long end = nextSequence.get();
+        List<String> logs = new ArrayList<>();
+        for (LogEntry entry : collect(end - Math.min(count, maxBufferSize), end, count)) {
+            logs.add(entry.toString());
         }
+        return logs;
+    }
+
+    /**
+     * 获取指定序号之后的日志
+     * @param since 已经读取的最后一条日志的序号，-1表示从缓冲中最早的日志开始
+     * @param limit 最多返回的条数
+     * @return 按序号排列的日志
+     */
+    public List<LogEntry> getEntriesSince(long since, int limit) {
+        return collect(since + 1, nextSequence.get(), limit);
+    }
+
+    // 获取最新一条日志的序号，没有日志时返回-1
+    public long getLatestSequence() {
+        return nextSequence.get() - 1;
+    }
+
+    // 获取缓冲中最早一条日志的序号，更早的日志已经被覆盖或清空
+    public long getOldestSequence() {
+        return Math.max(Math.max(0, nextSequence.get() - maxBufferSize), clearedBefore);
+    }
+
+    // 读取[start, end)范围内的日志，跳过已经被覆盖的槽位，遇到还没有写完的槽位就停止，
+    // 保证按序号增量读取的客户端不会漏掉正在写入的日志
+    private List<LogEntry> collect(long start, long end, int limit) {
+        start = Math.max(start, Math.max(Math.max(0, end - maxBufferSize), clearedBefore));
+        List<LogEntry> result = new ArrayList<>((int) Math.max(0, Math.min(limit, end - start)));
+        for (long sequence = start; sequence < end && result.size() < limit; sequence++) {
+            LogEntry entry = entries.get((int) (sequence % maxBufferSize));
+            if (entry == null || entry.sequence < sequence) {
+                break;
+            }
+            if (entry.sequence == sequence) {
+                result.add(entry);
+            }
+        }
+        return result;
     }
 
     // 清空日志缓冲区
     public void clearLogs() {
-        synchronized (logBuffer) {
-            logBuffer.clear();
-        }
+        clearedBefore = nextSequence.get();
     }
 
     // 注册监听器
     public void register(WebManager plugin) {
         Bukkit.getPluginManager().registerEvents(this, plugin);
+        // 接入服务器控制台日志
+        consoleCapture = new ConsoleLogCapture(plugin, this);
+        consoleCapture.start();
         // 添加初始日志
         addLog("[系统] LogListener 已启动");
     }
 
     // 注销监听器
     public void unregister() {
-        // Bukkit事件监听器会在插件禁用时自动注销
+        // Bukkit事件监听器会在插件禁用时自动注销，控制台日志需要手动移除
+        if (consoleCapture != null) {
+            consoleCapture.stop();
+            consoleCapture = null;
+        }
+    }
+
+    /**
+     * 一条日志，创建后不再修改
+     */
+    public static final class LogEntry {
+        private final long sequence;
+        private final long time;
+        private final String level;
+        private final String source;
+        private final String message;
+        private final long threadId;
+
+        LogEntry(long sequence, long time, String level, String source, String message, long threadId) {
+            this.sequence = sequence;
+            this.time = time;
+            this.level = level;
+            this.source = source;
+            this.message = message;
+            this.threadId = threadId;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public String getLevel() {
+            return level;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        // 产生日志的线程ID，用于找出某个线程执行期间自己输出的日志
+        public long getThreadId() {
+            return threadId;
+        }
+
+        // 按控制台的格式输出
+        @Override
+        public String toString() {
+            LocalTime localTime = LocalTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+            return "[" + TIME_FORMAT.format(localTime) + " " + level + "]: " + message;
+        }
     }
 }
@@ -0,0 +1,384 @@
+package com.webmanager;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 主线程采样分析器
+ * 开始后由后台线程按固定间隔读取主线程的调用栈，合并成调用树：每个栈帧（类名.方法名）只保存一次并分配编号，
+ * 树节点按编号查找子节点。正在运行的样本按调用栈中最靠近栈顶的插件包名归属到插件，结果可以导出为
+ * 火焰图工具使用的折叠栈格式（每行“帧;帧;帧 次数”）。
+ *
+ * 开销有上限：每次只读取固定深度的调用栈，调用树节点数量有上限，超过最长采样时间自动停止，
+ * 每次采样的耗时会累计下来，和采样次数一起报告。
+ */
+public class MainThreadProfiler {
+
+    // 调用树的根节点使用的帧编号
+    private static final int ROOT = -1;
+
+    private final WebManager plugin;
+    private final Thread mainThread;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final int maxDepth;
+    private final int maxNodes;
+    private ScheduledExecutorService sampler;
+    private ScheduledFuture<?> sampling;
+
+    // 以下状态在持有锁时访问
+    private final Map<String, Integer> frameIds = new HashMap<>();
+    private final List<String> frames = new ArrayList<>();
+    private final Map<String, String> ownerByClass = new HashMap<>();
+    private final Map<String, Integer> pluginSamples = new HashMap<>();
+    private Map<String, String> pluginPackages = new LinkedHashMap<>();
+    private Node root = new Node(ROOT);
+    private int nodeCount;
+    private long intervalMillis;
+    private long startedAt;
+    private long stoppedAt;
+    private long deadline;
+    private int samples;
+    private int idleSamples;
+    private int truncatedSamples;
+    private long samplingNanos;
+
+    public MainThreadProfiler(WebManager plugin, Thread mainThread, int maxDepth, int maxNodes) {
+        this.plugin = plugin;
+        this.mainThread = mainThread;
+        this.maxDepth = maxDepth;
+        this.maxNodes = maxNodes;
+    }
+
+    public MainThreadProfiler(WebManager plugin, Thread mainThread) {
+        this(plugin, mainThread, 128, 100_000); // 默认每次读取128层调用栈，调用树最多10万个节点
+    }
+
+    /**
+     * 清空之前的结果并开始采样
+     * @param intervalMillis 采样间隔（毫秒）
+     * @param durationSeconds 最长采样时间（秒），到时自动停止
+     * @return 已经在采样时返回false
+     */
+    public synchronized boolean start(long intervalMillis, long durationSeconds) {
+        if (isRunning()) {
+            return false;
+        }
+        frameIds.clear();
+        frames.clear();
+        ownerByClass.clear();
+        pluginSamples.clear();
+        pluginPackages = findPluginPackages();
+        root = new Node(ROOT);
+        nodeCount = 0;
+        samples = 0;
+        idleSamples = 0;
+        truncatedSamples = 0;
+        samplingNanos = 0;
+        this.intervalMillis = intervalMillis;
+        startedAt = System.currentTimeMillis();
+        stoppedAt = 0;
+        deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+        if (sampler == null) {
+            sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "WebManager-Profiler");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        sampling = sampler.scheduleAtFixedRate(this::sample, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    // 停止采样，保留结果，没有在采样时返回false
+    public synchronized boolean stop() {
+        if (!isRunning()) {
+            return false;
+        }
+        sampling.cancel(false);
+        stoppedAt = System.currentTimeMillis();
+        return true;
+    }
+
+    // 停止采样线程，插件关闭时调用
+    public synchronized void close() {
+        stop();
+        if (sampler != null) {
+            sampler.shutdownNow();
+            sampler = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return sampling != null && !sampling.isDone();
+    }
+
+    // 读取一次主线程的调用栈并加入调用树
+    private synchronized void sample() {
+        if (System.nanoTime() - deadline > 0) {
+            stop();
+            plugin.getLogger().info("主线程性能分析已达到最长采样时间，自动停止");
+            return;
+        }
+        long start = System.nanoTime();
+        ThreadInfo info = threads.getThreadInfo(mainThread.threadId(), maxDepth);
+        if (info == null) {
+            // 主线程已经结束
+            stop();
+            return;
+        }
+        StackTraceElement[] stack = info.getStackTrace();
+        samples++;
+        boolean running = info.getThreadState() == Thread.State.RUNNABLE;
+        if (!running) {
+            // 等待下一个tick或者等待锁的样本单独计数，不归属到插件
+            idleSamples++;
+        }
+        boolean truncated = stack.length >= maxDepth;
+        if (truncated) {
+            truncatedSamples++;
+        }
+        String owner = null;
+        Node node = root;
+        if (truncated) {
+            // 调用栈太深时丢弃靠近栈底的部分，用一个标记帧代替
+            node = child(node, intern("[截断]"));
+        }
+        // 调用栈数组从栈顶开始，调用树从栈底开始
+        for (int i = stack.length - 1; i >= 0; i--) {
+            String className = stack[i].getClassName();
+            node = child(node, intern(className + "." + stack[i].getMethodName()));
+            if (running) {
+                String frameOwner = ownerOf(className);
+                if (frameOwner != null) {
+                    owner = frameOwner;
+                }
+            }
+        }
+        node.self++;
+        if (running) {
+            pluginSamples.merge(owner != null ? owner : "服务器", 1, Integer::sum);
+        }
+        samplingNanos += System.nanoTime() - start;
+    }
+
+    // 获取子节点，节点数量达到上限时不再创建，继续累计到当前节点
+    private Node child(Node parent, int frame) {
+        Node child = parent.find(frame);
+        if (child == null) {
+            if (nodeCount >= maxNodes) {
+                return parent;
+            }
+            child = parent.add(frame);
+            nodeCount++;
+        }
+        return child;
+    }
+
+    private int intern(String frame) {
+        Integer id = frameIds.get(frame);
+        if (id == null) {
+            id = frames.size();
+            frames.add(frame);
+            frameIds.put(frame, id);
+        }
+        return id;
+    }
+
+    // 按包名判断类属于哪个插件，结果按类名缓存
+    private String ownerOf(String className) {
+        String owner = ownerByClass.get(className);
+        if (owner == null && !ownerByClass.containsKey(className)) {
+            for (Map.Entry<String, String> entry : pluginPackages.entrySet()) {
+                if (className.startsWith(entry.getKey())) {
+                    owner = entry.getValue();
+                    break;
+                }
+            }
+            ownerByClass.put(className, owner);
+        }
+        return owner;
+    }
+
+    // 按插件主类的包名识别插件，包名越长越先匹配
+    private static Map<String, String> findPluginPackages() {
+        List<String[]> packages = new ArrayList<>();
+        for (Plugin plugin : Bukkit.getPluginManager().getPlugins()) {
+            String main = plugin.getDescription().getMain();
+            int dot = main == null ? -1 : main.lastIndexOf('.');
+            if (dot > 0) {
+                packages.add(new String[] {main.substring(0, dot + 1), plugin.getName()});
+            }
+        }
+        packages.sort((a, b) -> Integer.compare(b[0].length(), a[0].length()));
+        Map<String, String> result = new LinkedHashMap<>();
+        for (String[] entry : packages) {
+            result.putIfAbsent(entry[0], entry[1]);
+        }
+        return result;
+    }
+
+    /**
+     * 以折叠栈格式写出调用树，每个有自身样本的节点一行，可以直接交给火焰图工具
+     * 持有锁时只复制调用树，写出时不持有锁，客户端读取缓慢不会阻塞采样
+     * @param out 输出
+     */
+    public void writeFolded(Writer out) throws IOException {
+        Node tree;
+        String[] names;
+        synchronized (this) {
+            tree = root.copy();
+            names = frames.toArray(new String[0]);
+        }
+        int[] path = new int[64];
+        writeFolded(out, names, tree, path, 0);
+    }
+
+    private static void writeFolded(Writer out, String[] names, Node node, int[] path, int depth) throws IOException {
+        if (node.self > 0 && depth > 0) {
+            for (int i = 0; i < depth; i++) {
+                if (i > 0) {
+                    out.write(';');
+                }
+                out.write(names[path[i]]);
+            }
+            out.write(' ');
+            out.write(Integer.toString(node.self));
+            out.write('\n');
+        }
+        for (int i = 0; i < node.childCount; i++) {
+            if (depth == path.length) {
+                path = Arrays.copyOf(path, path.length * 2);
+            }
+            path[depth] = node.children[i].frame;
+            writeFolded(out, names, node.children[i], path, depth + 1);
+        }
+    }
+
+    /**
+     * 写出采样状态、开销和按插件归属的样本数，持有锁时只读取数值，写出时不持有锁
+     * @param json JSON输出
+     */
+    public void writeSummary(JsonWriter json) throws IOException {
+        boolean active;
+        long interval;
+        long started;
+        long elapsedMillis;
+        int sampleCount;
+        int idleCount;
+        int truncatedCount;
+        int frameCount;
+        int nodes;
+        long nanos;
+        List<Map.Entry<String, Integer>> owners;
+        synchronized (this) {
+            long end = stoppedAt != 0 ? stoppedAt : System.currentTimeMillis();
+            active = isRunning();
+            interval = intervalMillis;
+            started = startedAt;
+            elapsedMillis = startedAt == 0 ? 0 : end - startedAt;
+            sampleCount = samples;
+            idleCount = idleSamples;
+            truncatedCount = truncatedSamples;
+            frameCount = frames.size();
+            nodes = nodeCount;
+            nanos = samplingNanos;
+            owners = new ArrayList<>(pluginSamples.entrySet().size());
+            for (Map.Entry<String, Integer> entry : pluginSamples.entrySet()) {
+                owners.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+        json.beginObject();
+        json.name("running").value(active);
+        json.name("intervalMillis").value(interval);
+        json.name("startedAt").value(started);
+        json.name("durationMillis").value(elapsedMillis);
+        json.name("samples").value(sampleCount);
+        json.name("idleSamples").value(idleCount);
+        json.name("truncatedSamples").value(truncatedCount);
+        json.name("frames").value(frameCount);
+        json.name("nodes").value(nodes);
+        json.name("overhead").beginObject();
+        json.name("samplingMillis").value(nanos / 1e6);
+        json.name("meanMicrosPerSample").value(sampleCount == 0 ? 0 : nanos / 1e3 / sampleCount);
+        // 采样线程占用的时间相对于经过时间的比例
+        json.name("percent").value(elapsedMillis == 0 ? 0 : nanos / 1e4 / elapsedMillis);
+        json.endObject();
+        // 正在运行的样本按插件统计，从多到少排列
+        owners.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+        int running = sampleCount - idleCount;
+        json.name("plugins").beginArray();
+        for (Map.Entry<String, Integer> owner : owners) {
+            json.beginObject();
+            json.name("name").value(owner.getKey());
+            json.name("samples").value(owner.getValue());
+            json.name("percent").value(running == 0 ? 0 : owner.getValue() * 100.0 / running);
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+    }
+
+    /**
+     * 调用树节点，子节点数量通常很少，使用数组按帧编号顺序查找
+     */
+    private static final class Node {
+        private final int frame;
+        private int self;
+        private Node[] children;
+        private int childCount;
+
+        Node(int frame) {
+            this.frame = frame;
+        }
+
+        Node find(int frame) {
+            for (int i = 0; i < childCount; i++) {
+                if (children[i].frame == frame) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        // 复制以这个节点为根的子树，子节点数组按实际数量复制
+        Node copy() {
+            Node copy = new Node(frame);
+            copy.self = self;
+            copy.childCount = childCount;
+            if (children != null) {
+                copy.children = new Node[childCount];
+                for (int i = 0; i < childCount; i++) {
+                    copy.children[i] = children[i].copy();
+                }
+            }
+            return copy;
+        }
+
+        Node add(int frame) {
+            if (children == null) {
+                children = new Node[2];
+            } else if (childCount == children.length) {
+                children = Arrays.copyOf(children, childCount * 2);
+            }
+            Node child = new Node(frame);
+            children[childCount++] = child;
+            return child;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.webmanager;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 内存和垃圾回收监控
+ * 通过GC通知记录每次回收的耗时，按回收器分别统计到耗时分布中，最近的回收保存在环形缓冲里；
+ * 内存池和直接内存的用量在读取时直接从MXBean获取；分配速率由各线程累计分配的字节数计算，
+ * 两次计算至少间隔一秒，多个调用方在一秒内读到同一个结果。
+ *
+ * 注意：ZGC、Shenandoah以及G1的并发周期也会发出通知，它们的耗时是并发阶段的时间，不是停顿，
+ * 这类回收器名称中带有"Cycles"或"Concurrent"，统计时标记为并发回收，不计入停顿。
+ */
+public class MemoryMonitor implements NotificationListener {
+
+    // 停顿耗时分布的上限（秒）
+    static final double[] PAUSE_BUCKETS = {0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5};
+
+    private final Thread mainThread;
+    private final int maxRecent;
+    private final AtomicReferenceArray<GcEvent> recent;
+    private final AtomicLong recordedCount = new AtomicLong();
+    private final Map<String, CollectorStats> collectors = new ConcurrentHashMap<>();
+    private final com.sun.management.ThreadMXBean threads;
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+
+    // 分配速率的计算状态，持有锁时访问
+    private long lastRateNanos;
+    private long lastAllocated;
+    private long lastMainAllocated;
+    private double allocationRate;
+    private double mainAllocationRate;
+
+    public MemoryMonitor(Thread mainThread, int maxRecent) {
+        this.mainThread = mainThread;
+        this.maxRecent = maxRecent;
+        this.recent = new AtomicReferenceArray<>(maxRecent);
+        this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    }
+
+    public MemoryMonitor(Thread mainThread) {
+        this(mainThread, 100); // 默认保留最近100次回收
+    }
+
+    // 注册GC通知，开启线程分配统计
+    public void start() {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter) {
+                NotificationEmitter emitter = (NotificationEmitter) collector;
+                emitter.addNotificationListener(this, null, null);
+                emitters.add(emitter);
+            }
+        }
+        if (threads.isThreadAllocatedMemorySupported() && !threads.isThreadAllocatedMemoryEnabled()) {
+            threads.setThreadAllocatedMemoryEnabled(true);
+        }
+        synchronized (this) {
+            lastRateNanos = System.nanoTime();
+            lastAllocated = getAllocatedBytes();
+            lastMainAllocated = getMainThreadAllocatedBytes();
+        }
+    }
+
+    // 移除GC通知
+    public void stop() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(this);
+            } catch (Exception e) {
+                // 已经移除
+            }
+        }
+        emitters.clear();
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        String name = info.getGcName();
+        long durationMillis = info.getGcInfo().getDuration();
+        boolean concurrent = name.contains("Cycles") || name.contains("Concurrent");
+        collectors.computeIfAbsent(name, key -> new CollectorStats(key, concurrent))
+                .record(TimeUnit.MILLISECONDS.toNanos(durationMillis));
+        long sequence = recordedCount.getAndIncrement();
+        recent.set((int) (sequence % maxRecent), new GcEvent(System.currentTimeMillis(), name, info.getGcAction(),
+                info.getGcCause(), durationMillis, concurrent));
+    }
+
+    // 按回收器名称获取统计
+    public List<CollectorStats> getCollectors() {
+        List<CollectorStats> list = new ArrayList<>(collectors.values());
+        list.sort((a, b) -> a.name.compareTo(b.name));
+        return list;
+    }
+
+    // 获取最近的回收，从新到旧排列
+    public List<GcEvent> getRecentCollections() {
+        long end = recordedCount.get();
+        List<GcEvent> list = new ArrayList<>();
+        for (long sequence = end - 1; sequence >= Math.max(0, end - maxRecent); sequence--) {
+            GcEvent event = recent.get((int) (sequence % maxRecent));
+            if (event != null) {
+                list.add(event);
+            }
+        }
+        return list;
+    }
+
+    // 所有回收器的停顿次数，不包括并发回收
+    public long getPauseCount() {
+        long count = 0;
+        for (CollectorStats stats : collectors.values()) {
+            if (!stats.concurrent) {
+                count += stats.getCount();
+            }
+        }
+        return count;
+    }
+
+    // 所有回收器的停顿总时间（毫秒），不包括并发回收
+    public double getPauseMillis() {
+        double millis = 0;
+        for (CollectorStats stats : collectors.values()) {
+            if (!stats.concurrent) {
+                millis += stats.getHistogram().getSumSeconds() * 1000;
+            }
+        }
+        return millis;
+    }
+
+    // 获取各内存池的用量
+    public List<MemoryPoolMXBean> getMemoryPools() {
+        return ManagementFactory.getMemoryPoolMXBeans();
+    }
+
+    // 获取直接内存和内存映射文件的用量
+    public List<BufferPoolMXBean> getBufferPools() {
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class);
+    }
+
+    /**
+     * 获取上一次GC后堆内存的使用率，反映存活对象占用的内存，不随分配和回收来回波动
+     * @return 使用率（百分比），还没有发生过GC时返回-1
+     */
+    public double getHeapUsageAfterGc() {
+        long used = 0;
+        long max = 0;
+        for (MemoryPoolMXBean pool : getMemoryPools()) {
+            if (pool.getType() != MemoryType.HEAP) {
+                continue;
+            }
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage == null) {
+                continue;
+            }
+            used += usage.getUsed();
+            max += pool.getUsage().getMax() > 0 ? pool.getUsage().getMax() : pool.getUsage().getCommitted();
+        }
+        if (used == 0 || max <= 0) {
+            return -1;
+        }
+        return Math.round(used * 1000.0 / max) / 10.0;
+    }
+
+    // 所有线程累计分配的堆内存（字节），包括已经结束的线程，不支持时返回-1
+    public long getAllocatedBytes() {
+        return threads.isThreadAllocatedMemoryEnabled() ? threads.getTotalThreadAllocatedBytes() : -1;
+    }
+
+    // 主线程累计分配的堆内存（字节），不支持时返回-1
+    public long getMainThreadAllocatedBytes() {
+        return threads.isThreadAllocatedMemoryEnabled() ? threads.getThreadAllocatedBytes(mainThread.threadId()) : -1;
+    }
+
+    // 所有线程的分配速率（字节/秒）
+    public synchronized double getAllocationRate() {
+        updateRates();
+        return allocationRate;
+    }
+
+    // 主线程的分配速率（字节/秒）
+    public synchronized double getMainThreadAllocationRate() {
+        updateRates();
+        return mainAllocationRate;
+    }
+
+    // 距上次计算超过一秒时重新计算分配速率
+    private void updateRates() {
+        long now = System.nanoTime();
+        long elapsed = now - lastRateNanos;
+        if (elapsed < TimeUnit.SECONDS.toNanos(1)) {
+            return;
+        }
+        long allocated = getAllocatedBytes();
+        long mainAllocated = getMainThreadAllocatedBytes();
+        double seconds = elapsed / 1e9;
+        allocationRate = allocated < 0 ? 0 : (allocated - lastAllocated) / seconds;
+        mainAllocationRate = mainAllocated < 0 ? 0 : (mainAllocated - lastMainAllocated) / seconds;
+        lastRateNanos = now;
+        lastAllocated = allocated;
+        lastMainAllocated = mainAllocated;
+    }
+
+    /**
+     * 单个回收器的统计
+     */
+    public static final class CollectorStats {
+        private final String name;
+        private final boolean concurrent;
+        private final HttpMetrics.Histogram histogram = new HttpMetrics.Histogram(PAUSE_BUCKETS);
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        CollectorStats(String name, boolean concurrent) {
+            this.name = name;
+            this.concurrent = concurrent;
+        }
+
+        void record(long nanos) {
+            histogram.observe(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // 是否为并发回收，并发回收的耗时不是停顿
+        public boolean isConcurrent() {
+            return concurrent;
+        }
+
+        public long getCount() {
+            long[] counts = histogram.getCumulativeCounts();
+            return counts[counts.length - 1];
+        }
+
+        // 耗时分布
+        public HttpMetrics.Histogram getHistogram() {
+            return histogram;
+        }
+
+        // 最长的一次耗时（毫秒）
+        public double getMaxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+    }
+
+    /**
+     * 一次回收的记录
+     */
+    public static final class GcEvent {
+        private final long time;
+        private final String collector;
+        private final String action;
+        private final String cause;
+        private final long durationMillis;
+        private final boolean concurrent;
+
+        GcEvent(long time, String collector, String action, String cause, long durationMillis, boolean concurrent) {
+            this.time = time;
+            this.collector = collector;
+            this.action = action;
+            this.cause = cause;
+            this.durationMillis = durationMillis;
+            this.concurrent = concurrent;
+        }
+
+        // 收到通知的时间（毫秒时间戳）
+        public long getTime() {
+            return time;
+        }
+
+        public String getCollector() {
+            return collector;
+        }
+
+        // 回收类型，例如"end of minor GC"
+        public String getAction() {
+            return action;
+        }
+
+        // 触发原因，例如"G1 Evacuation Pause"
+        public String getCause() {
+            return cause;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public boolean isConcurrent() {
+            return concurrent;
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package com.webmanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 资源监控的历史数据
+ * 每秒采样一次，同时累加到1秒、1分钟、1小时三个精度的环形存储中，每个时间桶记录最小值、最大值、
+ * 总和与采样次数，查询时按需要的步长合并。数据直接保存在ByteBuffer的固定位置，没有装箱对象；
+ * 可以写入插件目录下的内存映射文件，服务器重启后历史数据仍然保留。
+ *
+ * 文件格式：头部为魔数、版本、指标数量和各精度的容量，之后依次是每个精度的数据区：
+ * 桶编号long[容量]、采样次数long[容量]，再是最小值、最大值、总和各double[容量×指标数量]。
+ */
+public class MetricsHistory {
+
+    private static final int MAGIC = 0x574d4853; // "WMHS"
+    private static final int VERSION = 1;
+    // 文件头的长度，按8字节对齐
+    private static final int HEADER_SIZE = 32;
+    // 每次查询最多返回的点数，步长太小时自动放大
+    private static final int MAX_POINTS = 2000;
+
+    /**
+     * 记录的指标，顺序决定在文件中的位置，只能在末尾追加
+     */
+    public static final String[] METRICS = {
+            "cpu", "memory", "systemMemory", "disk", "tps", "tickInterval", "entities", "chunks", "players"
+    };
+
+    private final WebManager plugin;
+    private final File file;
+    private final Tier[] tiers;
+    private ByteBuffer buffer;
+    private FileChannel channel;
+    private ScheduledExecutorService sampler;
+    // 最近一次采样的值，还没有采样时为null
+    private volatile double[] latest;
+
+    public MetricsHistory(WebManager plugin, File file) {
+        this.plugin = plugin;
+        this.file = file;
+        // 1秒精度保留1小时，1分钟精度保留1天，1小时精度保留30天
+        this.tiers = new Tier[] {
+                new Tier(1000, 3600),
+                new Tier(60_000, 1440),
+                new Tier(3_600_000, 720)
+        };
+    }
+
+    public MetricsHistory(WebManager plugin) {
+        this(plugin, new File(plugin.getDataFolder(), "metrics.dat")); // 默认保存到插件目录，传入null表示只保存在内存中
+    }
+
+    // 打开存储并开始每秒采样
+    public void start() {
+        int size = layout();
+        buffer = openFile(size);
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(size);
+        }
+        if (buffer.getInt(0) != MAGIC) {
+            writeHeader();
+        }
+        sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "WebManager-Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(this::sample, 1, 1, TimeUnit.SECONDS);
+    }
+
+    // 停止采样，把内存映射的数据写回文件
+    public void stop() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+            try {
+                sampler.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (buffer instanceof MappedByteBuffer) {
+                ((MappedByteBuffer) buffer).force();
+            }
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // 忽略关闭时的错误
+                }
+                channel = null;
+            }
+        }
+    }
+
+    // 采集一次所有指标
+    private void sample() {
+        try {
+            ResourceMonitor monitor = plugin.getResourceMonitor();
+            double[] values = {
+                    monitor.getCpuUsage(),
+                    monitor.getMemoryUsage(),
+                    monitor.getSystemMemoryUsage(),
+                    monitor.getDiskUsage(),
+                    monitor.getTPS(1),
+                    monitor.getTickStats(1).getMeanInterval(),
+                    monitor.getEntityCount(),
+                    monitor.getLoadedChunksCount(),
+                    monitor.getOnlinePlayerCount()
+            };
+            record(System.currentTimeMillis(), values);
+            latest = values;
+        } catch (Exception e) {
+            plugin.getLogger().warning("采集历史数据失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取最近一次采样的值，导出指标时直接使用，不需要重新计算
+     * @return 按METRICS顺序排列的指标值，还没有采样时返回null，调用方不能修改
+     */
+    public double[] getLatest() {
+        return latest;
+    }
+
+    /**
+     * 记录一次采样，同时累加到所有精度
+     * @param time 采样时间（毫秒时间戳）
+     * @param values 按METRICS顺序排列的指标值
+     */
+    public synchronized void record(long time, double[] values) {
+        for (Tier tier : tiers) {
+            tier.add(time, values);
+        }
+    }
+
+    /**
+     * 查询一段时间内的历史数据
+     * 选择能覆盖开始时间并且精度不低于步长的最精细的存储，再按步长合并成数据点，没有数据的点不返回。
+     * @param metrics 指标在METRICS中的位置
+     * @param from 开始时间（毫秒时间戳，包含）
+     * @param to 结束时间（毫秒时间戳，不包含）
+     * @param step 期望的步长（毫秒），会被调整为存储精度的整数倍
+     * @return 查询结果
+     * @throws IllegalArgumentException 开始时间早于最长的保留时间，或者结束时间晚于当前时间
+     */
+    public synchronized Series query(int[] metrics, long from, long to, long step) {
+        long now = System.currentTimeMillis();
+        Tier tier = tiers[tiers.length - 1];
+        // 允许一个桶的误差，客户端按自己的时钟计算的时间范围不会因为相差几毫秒被拒绝
+        if (from < now - tier.getRetention() - tier.resolution) {
+            throw new IllegalArgumentException("开始时间超出了保留的范围，最多保留" + tier.getRetention() / 3_600_000L + "小时");
+        }
+        if (to > now + tier.resolution) {
+            throw new IllegalArgumentException("结束时间不能晚于当前时间");
+        }
+        for (Tier candidate : tiers) {
+            if (candidate.resolution <= Math.max(step, 1) && from >= now - candidate.getRetention()) {
+                tier = candidate;
+                break;
+            }
+        }
+        // 步长至少为一个桶，并且数据点不超过MAX_POINTS
+        long minimumStep = Math.max(tier.resolution, (to - from + MAX_POINTS - 1) / MAX_POINTS);
+        step = Math.max(step, minimumStep);
+        step = (step + tier.resolution - 1) / tier.resolution * tier.resolution;
+        from = Math.floorDiv(from, step) * step;
+
+        int points = (int) Math.max(0, (to - from + step - 1) / step);
+        Series series = new Series(tier.resolution, step, points, metrics.length);
+        long firstBucket = Math.max(Math.floorDiv(from, tier.resolution), Math.floorDiv(now, tier.resolution) - tier.capacity + 1);
+        // 当前时间之后没有数据，循环次数不会超过存储的桶数
+        long lastBucket = Math.min(Math.floorDiv(to - 1, tier.resolution), Math.floorDiv(now, tier.resolution));
+        for (long bucket = firstBucket; bucket <= lastBucket; bucket++) {
+            int slot = (int) Math.floorMod(bucket, (long) tier.capacity);
+            long count = buffer.getLong(tier.countOffset(slot));
+            if (buffer.getLong(tier.bucketOffset(slot)) != bucket || count == 0) {
+                continue;
+            }
+            int point = (int) ((bucket * tier.resolution - from) / step);
+            if (point < 0 || point >= points) {
+                continue;
+            }
+            boolean first = series.counts[point] == 0;
+            for (int i = 0; i < metrics.length; i++) {
+                series.merge(point, i, first, buffer.getDouble(tier.minOffset(slot, metrics[i])),
+                        buffer.getDouble(tier.maxOffset(slot, metrics[i])),
+                        buffer.getDouble(tier.sumOffset(slot, metrics[i])));
+            }
+            series.counts[point] += count;
+        }
+        series.complete(from);
+        return series;
+    }
+
+    /**
+     * 按名称查找指标
+     * @param name 指标名称
+     * @return 在METRICS中的位置，不存在时返回-1
+     */
+    public static int indexOf(String name) {
+        for (int i = 0; i < METRICS.length; i++) {
+            if (METRICS[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // 计算每个精度的数据区位置，返回总大小
+    private int layout() {
+        int offset = HEADER_SIZE;
+        for (Tier tier : tiers) {
+            tier.base = offset;
+            offset += tier.capacity * (16 + METRICS.length * 24);
+        }
+        return offset;
+    }
+
+    // 打开内存映射文件，文件格式不一致时清空重建，失败时返回null
+    private ByteBuffer openFile(int size) {
+        if (file == null) {
+            return null;
+        }
+        try {
+            file.getParentFile().mkdirs();
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (!matchesHeader(mapped)) {
+                // 容量或指标发生变化的旧文件无法按原来的位置读取，直接清空
+                for (int i = 0; i < size; i += 8) {
+                    mapped.putLong(i, 0);
+                }
+            }
+            return mapped;
+        } catch (IOException e) {
+            plugin.getLogger().warning("无法打开历史数据文件，历史数据只保存在内存中: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean matchesHeader(ByteBuffer data) {
+        if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION || data.getInt(8) != METRICS.length) {
+            return false;
+        }
+        for (int i = 0; i < tiers.length; i++) {
+            if (data.getInt(12 + i * 4) != tiers[i].capacity) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeHeader() {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, METRICS.length);
+        for (int i = 0; i < tiers.length; i++) {
+            buffer.putInt(12 + i * 4, tiers[i].capacity);
+        }
+    }
+
+    /**
+     * 一种精度的环形存储，第n个桶保存在n % capacity的位置，并记录桶编号用来判断数据是否过期
+     */
+    private final class Tier {
+        private final long resolution;
+        private final int capacity;
+        private int base;
+
+        Tier(long resolution, int capacity) {
+            this.resolution = resolution;
+            this.capacity = capacity;
+        }
+
+        long getRetention() {
+            return resolution * capacity;
+        }
+
+        void add(long time, double[] values) {
+            long bucket = Math.floorDiv(time, resolution);
+            int slot = (int) Math.floorMod(bucket, (long) capacity);
+            if (buffer.getLong(bucketOffset(slot)) != bucket) {
+                // 进入新的时间桶，覆盖环形存储中最旧的数据
+                buffer.putLong(bucketOffset(slot), bucket);
+                buffer.putLong(countOffset(slot), 0);
+            }
+            long count = buffer.getLong(countOffset(slot));
+            for (int i = 0; i < METRICS.length; i++) {
+                double value = values[i];
+                if (count == 0) {
+                    buffer.putDouble(minOffset(slot, i), value);
+                    buffer.putDouble(maxOffset(slot, i), value);
+                    buffer.putDouble(sumOffset(slot, i), value);
+                } else {
+                    buffer.putDouble(minOffset(slot, i), Math.min(buffer.getDouble(minOffset(slot, i)), value));
+                    buffer.putDouble(maxOffset(slot, i), Math.max(buffer.getDouble(maxOffset(slot, i)), value));
+                    buffer.putDouble(sumOffset(slot, i), buffer.getDouble(sumOffset(slot, i)) + value);
+                }
+            }
+            buffer.putLong(countOffset(slot), count + 1);
+        }
+
+        int bucketOffset(int slot) {
+            return base + slot * 8;
+        }
+
+        int countOffset(int slot) {
+            return base + (capacity + slot) * 8;
+        }
+
+        int minOffset(int slot, int metric) {
+            return base + capacity * 16 + (slot * METRICS.length + metric) * 8;
+        }
+
+        int maxOffset(int slot, int metric) {
+            return minOffset(slot, metric) + capacity * METRICS.length * 8;
+        }
+
+        int sumOffset(int slot, int metric) {
+            return minOffset(slot, metric) + capacity * METRICS.length * 16;
+        }
+    }
+
+    /**
+     * 查询结果，数组按数据点排列，每个指标有最小值、最大值和平均值
+     */
+    public static final class Series {
+        private final long resolution;
+        private final long step;
+        private final double[][] min;
+        private final double[][] max;
+        private final double[][] sum;
+        private final long[] counts;
+        private long[] times;
+        private int size;
+
+        Series(long resolution, long step, int points, int metrics) {
+            this.resolution = resolution;
+            this.step = step;
+            this.min = new double[metrics][points];
+            this.max = new double[metrics][points];
+            this.sum = new double[metrics][points];
+            this.counts = new long[points];
+        }
+
+        // 把一个时间桶合并到数据点中，first表示这是该点的第一个时间桶
+        void merge(int point, int metric, boolean first, double bucketMin, double bucketMax, double bucketSum) {
+            if (first) {
+                min[metric][point] = bucketMin;
+                max[metric][point] = bucketMax;
+            } else {
+                min[metric][point] = Math.min(min[metric][point], bucketMin);
+                max[metric][point] = Math.max(max[metric][point], bucketMax);
+            }
+            sum[metric][point] += bucketSum;
+        }
+
+        // 去掉没有数据的点，计算每个点的开始时间
+        void complete(long from) {
+            times = new long[counts.length];
+            int target = 0;
+            for (int point = 0; point < counts.length; point++) {
+                if (counts[point] == 0) {
+                    continue;
+                }
+                times[target] = from + point * step;
+                counts[target] = counts[point];
+                for (int metric = 0; metric < min.length; metric++) {
+                    min[metric][target] = min[metric][point];
+                    max[metric][target] = max[metric][point];
+                    sum[metric][target] = sum[metric][point];
+                }
+                target++;
+            }
+            size = target;
+        }
+
+        // 所用存储的精度（毫秒）
+        public long getResolution() {
+            return resolution;
+        }
+
+        // 实际的步长（毫秒）
+        public long getStep() {
+            return step;
+        }
+
+        // 有数据的点数
+        public int size() {
+            return size;
+        }
+
+        // 第point个点的开始时间（毫秒时间戳）
+        public long getTime(int point) {
+            return times[point];
+        }
+
+        public double getMin(int metric, int point) {
+            return min[metric][point];
+        }
+
+        public double getMax(int metric, int point) {
+            return max[metric][point];
+        }
+
+        public double getAvg(int metric, int point) {
+            return sum[metric][point] / counts[point];
+        }
+    }
+}
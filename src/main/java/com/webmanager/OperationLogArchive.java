@@ -0,0 +1,469 @@
+package com.webmanager;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 操作日志归档
+ * 当前写入的日志文件轮转后会重命名为带起止时间的分段文件，再由后台线程压缩成gzip，
+ * 超过保留天数的归档会被删除。每个分段都带有一个.idx索引文件，压缩时每个索引块
+ * 单独压缩成一个gzip成员并记录它的偏移，查询时可以只解压需要的块。
+ */
+public class OperationLogArchive {
+
+    // 日志行开头的时间格式，固定长度，可以直接按字符串比较先后
+    static final DateTimeFormatter LINE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    static final int LINE_TIME_LENGTH = 19;
+    private static final DateTimeFormatter FILE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+    private static final int TAIL_BLOCK_SIZE = 8192;
+
+    private final File activeFile;
+    private final String baseName;
+    private final Pattern segmentPattern;
+    private final int retentionDays;
+    private final Logger logger;
+    private final ExecutorService compressor;
+    // 已加载的分段索引，归档的索引不会再变化
+    private final Map<File, OperationLogIndex> indexCache = new ConcurrentHashMap<>();
+
+    public OperationLogArchive(File activeFile, Logger logger, int retentionDays) {
+        this.activeFile = activeFile;
+        this.logger = logger;
+        this.retentionDays = retentionDays;
+        String name = activeFile.getName();
+        this.baseName = name.endsWith(".txt") ? name.substring(0, name.length() - 4) : name;
+        this.segmentPattern = Pattern.compile(Pattern.quote(baseName)
+                + "-(\\d{8}_\\d{6})-(\\d{8}_\\d{6})(?:-\\d+)?\\.txt(\\.gz)?");
+        this.compressor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "WebManager-LogArchiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public OperationLogArchive(File activeFile, Logger logger) {
+        this(activeFile, logger, 90); // 默认保留90天
+    }
+
+    /**
+     * 启动时压缩上次没来得及压缩的分段，并清理过期归档
+     */
+    public void start() {
+        for (Segment segment : listSegments()) {
+            if (!segment.isCompressed()) {
+                compressor.execute(() -> compress(segment.getFile()));
+            }
+        }
+        compressor.execute(this::applyRetention);
+    }
+
+    /**
+     * 停止后台压缩线程，等待正在进行的压缩完成
+     */
+    public void close() {
+        compressor.shutdown();
+        try {
+            compressor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 把已经关闭的当前日志文件转为分段文件，由写线程在轮转时调用
+     * @param closedFile 已关闭写入的当前日志文件
+     */
+    public void rotate(File closedFile) throws IOException {
+        if (!closedFile.exists() || closedFile.length() == 0) {
+            return;
+        }
+        LocalDateTime start = readFirstTimestamp(closedFile);
+        LocalDateTime end = LocalDateTime.now();
+        String name = baseName + "-" + FILE_TIME_FORMAT.format(start) + "-" + FILE_TIME_FORMAT.format(end);
+        File target = new File(closedFile.getParentFile(), name + ".txt");
+        for (int i = 1; target.exists() || new File(target.getPath() + ".gz").exists(); i++) {
+            target = new File(closedFile.getParentFile(), name + "-" + i + ".txt");
+        }
+        Files.move(closedFile.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        // 索引文件跟随日志文件一起移动
+        File closedIndex = indexFileOf(closedFile);
+        if (closedIndex.exists()) {
+            Files.move(closedIndex.toPath(), indexFileOf(target).toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        File segment = target;
+        compressor.execute(() -> {
+            compress(segment);
+            applyRetention();
+        });
+    }
+
+    /**
+     * 列出所有已轮转的分段，按结束时间从旧到新排列
+     * @return 分段列表
+     */
+    public List<Segment> listSegments() {
+        List<Segment> segments = new ArrayList<>();
+        File[] files = activeFile.getParentFile().listFiles();
+        if (files == null) {
+            return segments;
+        }
+        for (File file : files) {
+            Matcher matcher = segmentPattern.matcher(file.getName());
+            if (!matcher.matches()) {
+                continue;
+            }
+            boolean compressed = matcher.group(3) != null;
+            String plainName = file.getName().substring(0, file.getName().length() - 3);
+            if (compressed && new File(file.getParentFile(), plainName).exists()) {
+                // 正在压缩中，未压缩的分段删除前以它为准
+                continue;
+            }
+            try {
+                LocalDateTime start = LocalDateTime.parse(matcher.group(1), FILE_TIME_FORMAT);
+                LocalDateTime end = LocalDateTime.parse(matcher.group(2), FILE_TIME_FORMAT);
+                segments.add(new Segment(file, LINE_TIME_FORMAT.format(start), LINE_TIME_FORMAT.format(end),
+                        compressed));
+            } catch (DateTimeParseException e) {
+                // 跳过无法识别的文件
+            }
+        }
+        segments.sort((a, b) -> a.getEnd().equals(b.getEnd())
+                ? a.getFile().getName().compareTo(b.getFile().getName())
+                : a.getEnd().compareTo(b.getEnd()));
+        return segments;
+    }
+
+    /**
+     * 读取最近的limit行日志，从当前文件开始，不够时再依次读取更早的分段
+     * @param limit 行数限制
+     * @return 按时间顺序排列的日志行
+     */
+    public List<String> readRecent(int limit) throws IOException {
+        List<String> lines = readTail(activeFile, limit);
+        List<Segment> segments = listSegments();
+        for (int i = segments.size() - 1; i >= 0 && lines.size() < limit; i--) {
+            Segment segment = segments.get(i);
+            int need = limit - lines.size();
+            List<String> older = segment.isCompressed()
+                    ? readCompressedTail(segment, need)
+                    : readTail(segment.getFile(), need);
+            older.addAll(lines);
+            lines = older;
+        }
+        return lines;
+    }
+
+    /**
+     * 获取分段的索引，未压缩的分段没有索引文件时重新建立
+     * @param segment 分段
+     * @return 索引，归档缺少索引文件时返回null
+     */
+    public OperationLogIndex getIndex(Segment segment) throws IOException {
+        OperationLogIndex index = indexCache.get(segment.getFile());
+        if (index != null) {
+            return index;
+        }
+        index = OperationLogIndex.loadReadOnly(indexFileOf(segment.getFile()));
+        if (index == null && !segment.isCompressed()) {
+            index = OperationLogIndex.build(segment.getFile());
+        }
+        if (index != null) {
+            indexCache.put(segment.getFile(), index);
+        }
+        return index;
+    }
+
+    /**
+     * 读取一个索引块中的日志行
+     * @param channel 日志文件
+     * @param block 索引块
+     * @param compressed 是否为分块压缩的归档
+     * @return 按文件顺序排列的日志行
+     */
+    static List<String> readBlock(FileChannel channel, OperationLogIndex.Block block, boolean compressed)
+            throws IOException {
+        int length = (int) (block.getEnd() - block.getStart());
+        byte[] bytes;
+        if (compressed) {
+            channel.position(block.getCompressedOffset());
+            // 关闭解压流时不能关闭文件，后面的块还要继续读取
+            InputStream source = new FilterInputStream(Channels.newInputStream(channel)) {
+                @Override
+                public void close() {
+                }
+            };
+            try (InputStream in = new GZIPInputStream(source, 8192)) {
+                bytes = in.readNBytes(length);
+            }
+        } else {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining() && channel.read(buffer, block.getStart() + buffer.position()) > 0) {
+                // 读取到缓冲区填满为止
+            }
+            bytes = buffer.array();
+            length = buffer.position();
+        }
+
+        List<String> lines = new ArrayList<>(block.getCount());
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == '\n') {
+                lines.add(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        if (start < length) {
+            lines.add(new String(bytes, start, length - start, StandardCharsets.UTF_8));
+        }
+        return lines;
+    }
+
+    /**
+     * 获取日志文件对应的索引文件
+     * @param logFile 日志文件或归档
+     * @return 索引文件
+     */
+    static File indexFileOf(File logFile) {
+        return new File(logFile.getPath() + ".idx");
+    }
+
+    private static BufferedReader openReader(File file) throws IOException {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+    }
+
+    // 按索引块分块压缩单个分段，先写临时文件再重命名，避免留下不完整的归档
+    private void compress(File segment) {
+        File target = new File(segment.getPath() + ".gz");
+        File temp = new File(segment.getPath() + ".gz.tmp");
+        File targetIndex = indexFileOf(target);
+        File tempIndex = new File(targetIndex.getPath() + ".tmp");
+        try {
+            OperationLogIndex index = OperationLogIndex.loadReadOnly(indexFileOf(segment));
+            if (index == null || !covers(index, segment)) {
+                index = OperationLogIndex.build(segment);
+            }
+            index.seal();
+            List<OperationLogIndex.Block> blocks = index.findBlocks(null, null, 0, 0);
+            long[] offsets = new long[blocks.size()];
+            ByteArrayOutputStream member = new ByteArrayOutputStream(65536);
+            try (FileChannel in = FileChannel.open(segment.toPath(), StandardOpenOption.READ);
+                 FileOutputStream out = new FileOutputStream(temp)) {
+                long position = 0;
+                for (int i = 0; i < blocks.size(); i++) {
+                    OperationLogIndex.Block block = blocks.get(i);
+                    ByteBuffer content = ByteBuffer.allocate((int) (block.getEnd() - block.getStart()));
+                    while (content.hasRemaining() && in.read(content, block.getStart() + content.position()) > 0) {
+                        // 读取到缓冲区填满为止
+                    }
+                    // 每个块是一个独立的gzip成员，整个文件仍然可以按普通gzip顺序解压
+                    member.reset();
+                    try (GZIPOutputStream gzip = new GZIPOutputStream(member)) {
+                        gzip.write(content.array(), 0, content.position());
+                    }
+                    offsets[i] = position;
+                    member.writeTo(out);
+                    position += member.size();
+                }
+            }
+            index.writeCompressed(tempIndex, offsets);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "压缩日志分段失败: " + segment.getName(), e);
+            temp.delete();
+            tempIndex.delete();
+            return;
+        }
+        try {
+            // 先保存索引，归档出现时它的索引已经存在
+            Files.move(tempIndex.toPath(), targetIndex.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(segment.toPath());
+            Files.deleteIfExists(indexFileOf(segment).toPath());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "保存日志归档失败: " + target.getName(), e);
+        }
+        indexCache.remove(segment);
+        indexCache.remove(target);
+    }
+
+    // 判断索引是否覆盖了整个文件
+    private static boolean covers(OperationLogIndex index, File segment) {
+        List<OperationLogIndex.Block> blocks = index.findBlocks(null, null, 0, 0);
+        return !blocks.isEmpty() && blocks.get(blocks.size() - 1).getEnd() == segment.length();
+    }
+
+    // 删除结束时间早于保留期限的归档
+    private void applyRetention() {
+        String cutoff = LINE_TIME_FORMAT.format(LocalDateTime.now().minusDays(retentionDays));
+        for (Segment segment : listSegments()) {
+            if (segment.isCompressed() && segment.getEnd().compareTo(cutoff) < 0) {
+                if (!segment.getFile().delete()) {
+                    logger.warning("删除过期日志归档失败: " + segment.getFile().getName());
+                    continue;
+                }
+                indexFileOf(segment.getFile()).delete();
+                indexCache.remove(segment.getFile());
+            }
+        }
+    }
+
+    // 读取文件第一行的时间，无法识别时使用文件的修改时间
+    private static LocalDateTime readFirstTimestamp(File file) throws IOException {
+        try (BufferedReader reader = openReader(file)) {
+            String line = reader.readLine();
+            if (line != null && line.length() >= LINE_TIME_LENGTH) {
+                return LocalDateTime.parse(line.substring(0, LINE_TIME_LENGTH), LINE_TIME_FORMAT);
+            }
+        } catch (DateTimeParseException e) {
+            // 使用文件修改时间
+        }
+        return LocalDateTime.ofInstant(Files.getLastModifiedTime(file.toPath()).toInstant(), ZoneId.systemDefault());
+    }
+
+    // 按索引从最后一个块向前解压，读够limit行就停止，不解压整个归档
+    private List<String> readCompressedTail(Segment segment, int limit) throws IOException {
+        OperationLogIndex index = getIndex(segment);
+        if (index == null) {
+            logger.warning("日志归档缺少索引，跳过: " + segment.getFile().getName());
+            return new ArrayList<>();
+        }
+        List<OperationLogIndex.Block> blocks = index.findBlocks(null, null, 0, 0);
+        ArrayDeque<String> tail = new ArrayDeque<>(limit);
+        try (FileChannel channel = FileChannel.open(segment.getFile().toPath(), StandardOpenOption.READ)) {
+            for (int i = blocks.size() - 1; i >= 0 && tail.size() < limit; i--) {
+                List<String> lines = readBlock(channel, blocks.get(i), true);
+                for (int j = lines.size() - 1; j >= 0 && tail.size() < limit; j--) {
+                    if (!lines.get(j).isEmpty()) {
+                        tail.addFirst(lines.get(j));
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(tail);
+    }
+
+    /**
+     * 从文件末尾向前读取最后limit行，耗时只与读取的行数有关，与文件大小无关
+     * @param file 日志文件
+     * @param limit 行数限制
+     * @return 按时间顺序排列的日志行
+     */
+    static List<String> readTail(File file, int limit) throws IOException {
+        List<String> lines = new ArrayList<>();
+        if (!file.exists() || limit <= 0) {
+            return lines;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long end = channel.size();
+            ByteBuffer block = ByteBuffer.allocate(TAIL_BLOCK_SIZE);
+            long position = end;
+            long start = 0;
+            int newlines = 0;
+            boolean skippedTrailing = false;
+
+            // 向前查找第limit个换行符（不含文件末尾的换行符），它之后就是需要读取的起始位置
+            search:
+            while (position > 0) {
+                int size = (int) Math.min(TAIL_BLOCK_SIZE, position);
+                position -= size;
+                block.clear().limit(size);
+                channel.read(block, position);
+                for (int i = size - 1; i >= 0; i--) {
+                    if (block.get(i) != '\n') {
+                        continue;
+                    }
+                    if (!skippedTrailing && position + i == end - 1) {
+                        // 文件最后的换行符不算作一行
+                        skippedTrailing = true;
+                        continue;
+                    }
+                    if (++newlines == limit) {
+                        start = position + i + 1;
+                        break search;
+                    }
+                }
+            }
+
+            ByteBuffer content = ByteBuffer.allocate((int) (end - start));
+            while (content.hasRemaining() && channel.read(content, start + content.position()) > 0) {
+                // 读取到缓冲区填满为止
+            }
+            String text = new String(content.array(), 0, content.position(), StandardCharsets.UTF_8);
+            for (String line : text.split("\n")) {
+                if (line.endsWith("\r")) {
+                    line = line.substring(0, line.length() - 1);
+                }
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * 已轮转的日志分段
+     */
+    public static final class Segment {
+        private final File file;
+        private final String start;
+        private final String end;
+        private final boolean compressed;
+
+        Segment(File file, String start, String end, boolean compressed) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+            this.compressed = compressed;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public String getStart() {
+            return start;
+        }
+
+        public String getEnd() {
+            return end;
+        }
+
+        public boolean isCompressed() {
+            return compressed;
+        }
+    }
+}
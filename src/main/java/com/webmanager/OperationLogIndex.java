@@ -0,0 +1,644 @@
+package com.webmanager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 操作日志的稀疏索引
+ * 每BLOCK_ENTRIES条日志组成一个块，索引只记录块的文件偏移、时间范围，以及每个IP和
+ * 功能分类出现在哪些块中（倒排表）。查询时先用倒排表和时间范围筛选出候选块，
+ * 再只读取这些块的内容。已完成的块追加写入.idx文件，IP和分类在文件中只保存一次，
+ * 块记录中只保存它们的编号，重启后不需要重新扫描整个日志。
+ */
+public class OperationLogIndex {
+
+    static final int BLOCK_ENTRIES = 256;
+    // 索引文件中的记录类型：字符串记录给IP和分类编号，块记录只保存编号
+    private static final byte STRING_RECORD = 'S';
+    private static final byte BLOCK_RECORD = 'B';
+
+    private final File indexFile;
+    private final List<Block> blocks = new ArrayList<>();
+    private final Map<String, IntList> ipPostings = new HashMap<>();
+    private final Map<String, IntList> categoryPostings = new HashMap<>();
+    // 已经写入索引文件的字符串及其编号
+    private final Map<String, Integer> writtenStrings = new HashMap<>();
+    // 当前还没写满的块，只有正在写入的日志文件才有
+    private Block openBlock;
+    private DataOutputStream output;
+
+    private OperationLogIndex(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * 加载日志文件的索引，并把索引之后新增的日志补进索引
+     * @param logFile 日志文件（未压缩）
+     * @param indexFile 索引文件
+     * @return 可以继续追加的索引
+     */
+    public static OperationLogIndex openForAppend(File logFile, File indexFile) throws IOException {
+        OperationLogIndex index = new OperationLogIndex(indexFile);
+        long validLength = index.load();
+        long indexedEnd = index.blocks.isEmpty() ? 0 : index.blocks.get(index.blocks.size() - 1).end;
+        long fileLength = logFile.exists() ? logFile.length() : 0;
+        if (indexedEnd > fileLength) {
+            // 日志文件被清空或替换过，索引已经失效
+            index.clearInMemory();
+            validLength = 0;
+            indexedEnd = 0;
+        }
+        // 去掉崩溃时写了一半的记录
+        if (indexFile.exists() && indexFile.length() != validLength) {
+            try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw")) {
+                raf.setLength(validLength);
+            }
+        }
+        index.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)));
+        if (fileLength > indexedEnd) {
+            index.scan(logFile, indexedEnd, fileLength, false);
+        }
+        return index;
+    }
+
+    /**
+     * 加载只读的归档索引
+     * @param indexFile 索引文件
+     * @return 索引，文件不存在时返回null
+     */
+    public static OperationLogIndex loadReadOnly(File indexFile) throws IOException {
+        if (!indexFile.exists()) {
+            return null;
+        }
+        OperationLogIndex index = new OperationLogIndex(indexFile);
+        index.load();
+        return index;
+    }
+
+    /**
+     * 为已经写完的日志文件重新建立完整的索引，不写入磁盘
+     * @param logFile 日志文件（未压缩）
+     * @return 索引
+     */
+    public static OperationLogIndex build(File logFile) throws IOException {
+        OperationLogIndex index = new OperationLogIndex(null);
+        index.scan(logFile, 0, logFile.length(), true);
+        index.seal();
+        return index;
+    }
+
+    /**
+     * 记录一批刚写入文件的日志，由写线程调用
+     * @param lines 日志行，不含换行符
+     * @param offset 第一行在文件中的偏移
+     */
+    public synchronized void append(List<String> lines, long offset) {
+        for (String line : lines) {
+            long end = offset + utf8Length(line) + 1;
+            add(line, offset, end);
+            offset = end;
+        }
+        flush();
+    }
+
+    /**
+     * 日志文件被清空时重置索引
+     */
+    public synchronized void truncate() {
+        clearInMemory();
+        try {
+            if (output != null) {
+                output.close();
+            }
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, false)));
+        } catch (IOException e) {
+            output = null;
+        }
+    }
+
+    /**
+     * 把未写满的块也作为完整的块写入索引文件，日志文件轮转前调用
+     */
+    public synchronized void seal() {
+        if (openBlock != null && openBlock.count > 0) {
+            sealOpenBlock();
+        }
+        openBlock = null;
+        flush();
+    }
+
+    /**
+     * 关闭索引文件
+     */
+    public synchronized void close() {
+        if (output != null) {
+            try {
+                output.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+            output = null;
+        }
+    }
+
+    /**
+     * 把块的压缩偏移写入新的索引文件，用于分块压缩后的归档
+     * @param target 目标索引文件
+     * @param compressedOffsets 每个块在压缩文件中的偏移
+     */
+    public synchronized void writeCompressed(File target, long[] compressedOffsets) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(target)))) {
+            Map<String, Integer> dictionary = new HashMap<>();
+            for (int i = 0; i < blocks.size(); i++) {
+                Block block = blocks.get(i).copy();
+                block.compressedOffset = compressedOffsets[i];
+                block.ips = blocks.get(i).ips;
+                block.categories = blocks.get(i).categories;
+                writeBlock(out, block, dictionary);
+            }
+        }
+    }
+
+    /**
+     * 获取第一条日志的时间
+     * @return yyyyMMddHHmmss格式的数字，没有日志时返回0
+     */
+    public synchronized long getFirstTime() {
+        if (!blocks.isEmpty()) {
+            return blocks.get(0).firstTime;
+        }
+        return openBlock != null ? openBlock.firstTime : 0;
+    }
+
+    /**
+     * 按条件筛选可能包含匹配日志的块，未写满的块返回当前状态的副本
+     * @param ip IP地址，为null表示不限制
+     * @param category 功能分类，为null表示不限制
+     * @param fromTime 开始时间，0表示不限制
+     * @param toTime 结束时间，0表示不限制
+     * @return 候选块，按文件顺序排列
+     */
+    public synchronized List<Block> findBlocks(String ip, String category, long fromTime, long toTime) {
+        boolean hasOpen = openBlock != null && openBlock.count > 0;
+        int[] candidates = null;
+        if (ip != null) {
+            candidates = postings(ipPostings, ip, hasOpen && openBlock.ips.contains(ip));
+        }
+        if (category != null) {
+            int[] byCategory = postings(categoryPostings, category, hasOpen && openBlock.categories.contains(category));
+            candidates = candidates == null ? byCategory : intersect(candidates, byCategory);
+        }
+        if (candidates == null) {
+            candidates = new int[blocks.size() + (hasOpen ? 1 : 0)];
+            for (int i = 0; i < candidates.length; i++) {
+                candidates[i] = i;
+            }
+        }
+
+        List<Block> result = new ArrayList<>(candidates.length);
+        for (int id : candidates) {
+            Block block = id < blocks.size() ? blocks.get(id) : openBlock;
+            if ((fromTime == 0 || block.lastTime >= fromTime) && (toTime == 0 || block.firstTime <= toTime)) {
+                result.add(block == openBlock ? block.copy() : block);
+            }
+        }
+        return result;
+    }
+
+    private int[] postings(Map<String, IntList> map, String key, boolean inOpenBlock) {
+        IntList list = map.get(key);
+        int size = list == null ? 0 : list.size;
+        int[] result = new int[size + (inOpenBlock ? 1 : 0)];
+        if (list != null) {
+            System.arraycopy(list.values, 0, result, 0, size);
+        }
+        if (inOpenBlock) {
+            result[size] = blocks.size();
+        }
+        return result;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, size = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private void add(String line, long start, long end) {
+        if (openBlock == null) {
+            openBlock = new Block(blocks.size(), start);
+        }
+        Entry entry = Entry.parse(line);
+        if (entry != null) {
+            if (openBlock.count == 0 || openBlock.firstTime == 0) {
+                openBlock.firstTime = entry.time;
+            }
+            openBlock.lastTime = Math.max(openBlock.lastTime, entry.time);
+            openBlock.ips.add(entry.ip);
+            openBlock.categories.add(entry.category);
+        }
+        openBlock.end = end;
+        openBlock.count++;
+        if (openBlock.count >= BLOCK_ENTRIES) {
+            sealOpenBlock();
+            openBlock = null;
+        }
+    }
+
+    private void sealOpenBlock() {
+        int id = openBlock.id;
+        blocks.add(openBlock);
+        for (String ip : openBlock.ips) {
+            ipPostings.computeIfAbsent(ip, k -> new IntList()).add(id);
+        }
+        for (String category : openBlock.categories) {
+            categoryPostings.computeIfAbsent(category, k -> new IntList()).add(id);
+        }
+        if (output != null) {
+            try {
+                writeBlock(output, openBlock, writtenStrings);
+            } catch (IOException e) {
+                output = null;
+            }
+        }
+    }
+
+    private void flush() {
+        if (output != null) {
+            try {
+                output.flush();
+            } catch (IOException e) {
+                output = null;
+            }
+        }
+    }
+
+    // 从日志文件的指定范围读取日志加入索引，includePartial表示是否包括末尾没有换行符的行
+    private void scan(File logFile, long from, long to, boolean includePartial) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(logFile, "r")) {
+            raf.seek(from);
+            byte[] buffer = new byte[65536];
+            byte[] lineBuffer = new byte[1024];
+            int lineLength = 0;
+            long position = from;
+            long lineStart = from;
+            while (position < to) {
+                int read = raf.read(buffer, 0, (int) Math.min(buffer.length, to - position));
+                if (read < 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    position++;
+                    if (b == '\n') {
+                        String line = new String(lineBuffer, 0, lineLength, StandardCharsets.UTF_8);
+                        add(line, lineStart, position);
+                        lineStart = position;
+                        lineLength = 0;
+                    } else {
+                        if (lineLength == lineBuffer.length) {
+                            lineBuffer = Arrays.copyOf(lineBuffer, lineLength * 2);
+                        }
+                        lineBuffer[lineLength++] = b;
+                    }
+                }
+            }
+            if (includePartial && lineLength > 0) {
+                add(new String(lineBuffer, 0, lineLength, StandardCharsets.UTF_8), lineStart, position);
+            }
+        }
+        flush();
+    }
+
+    // 读取索引文件，返回最后一条完整记录结束的位置
+    private long load() throws IOException {
+        if (indexFile == null || !indexFile.exists()) {
+            return 0;
+        }
+        long valid = 0;
+        List<String> dictionary = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            CountingReader reader = new CountingReader(in);
+            try {
+                while (true) {
+                    byte type = reader.readByte();
+                    if (type == STRING_RECORD) {
+                        String value = reader.readString();
+                        writtenStrings.put(value, dictionary.size());
+                        dictionary.add(value);
+                    } else if (type == BLOCK_RECORD) {
+                        openBlock = readBlock(reader, blocks.size(), dictionary);
+                        sealOpenBlock();
+                        openBlock = null;
+                    } else {
+                        break;
+                    }
+                    valid = reader.position;
+                }
+            } catch (EOFException e) {
+                // 文件末尾是崩溃时写了一半的记录
+            }
+        }
+        return valid;
+    }
+
+    private void clearInMemory() {
+        blocks.clear();
+        ipPostings.clear();
+        categoryPostings.clear();
+        writtenStrings.clear();
+        openBlock = null;
+    }
+
+    private static void writeBlock(DataOutputStream out, Block block, Map<String, Integer> dictionary)
+            throws IOException {
+        writeNewStrings(out, block.ips, dictionary);
+        writeNewStrings(out, block.categories, dictionary);
+        out.writeByte(BLOCK_RECORD);
+        out.writeLong(block.start);
+        out.writeLong(block.end);
+        out.writeLong(block.compressedOffset);
+        out.writeLong(block.firstTime);
+        out.writeLong(block.lastTime);
+        out.writeInt(block.count);
+        writeIds(out, block.ips, dictionary);
+        writeIds(out, block.categories, dictionary);
+    }
+
+    // 写入还没有编号的字符串
+    private static void writeNewStrings(DataOutputStream out, Set<String> values, Map<String, Integer> dictionary)
+            throws IOException {
+        for (String value : values) {
+            if (!dictionary.containsKey(value)) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeByte(STRING_RECORD);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                dictionary.put(value, dictionary.size());
+            }
+        }
+    }
+
+    private static void writeIds(DataOutputStream out, Set<String> values, Map<String, Integer> dictionary)
+            throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeInt(dictionary.get(value));
+        }
+    }
+
+    private static Block readBlock(CountingReader in, int id, List<String> dictionary) throws IOException {
+        Block block = new Block(id, in.readLong());
+        block.end = in.readLong();
+        block.compressedOffset = in.readLong();
+        block.firstTime = in.readLong();
+        block.lastTime = in.readLong();
+        block.count = in.readInt();
+        block.ips = in.readIds(dictionary);
+        block.categories = in.readIds(dictionary);
+        return block;
+    }
+
+    // 计算字符串的UTF-8编码长度，不分配字节数组
+    static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 一个索引块
+     */
+    public static final class Block {
+        private final int id;
+        private final long start;
+        private long end;
+        // 分块压缩的归档中该块所在的偏移，未压缩时为-1
+        private long compressedOffset = -1;
+        private long firstTime;
+        private long lastTime;
+        private int count;
+        private Set<String> ips = new LinkedHashSet<>();
+        private Set<String> categories = new LinkedHashSet<>();
+
+        Block(int id, long start) {
+            this.id = id;
+            this.start = start;
+        }
+
+        Block copy() {
+            Block copy = new Block(id, start);
+            copy.end = end;
+            copy.compressedOffset = compressedOffset;
+            copy.firstTime = firstTime;
+            copy.lastTime = lastTime;
+            copy.count = count;
+            return copy;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        public long getCompressedOffset() {
+            return compressedOffset;
+        }
+
+        public long getFirstTime() {
+            return firstTime;
+        }
+
+        public long getLastTime() {
+            return lastTime;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * 解析后的一条日志，格式为"时间, IP, 功能分类, 详细操作"
+     */
+    public static final class Entry {
+        final long time;
+        final String timestamp;
+        final String ip;
+        final String category;
+        final String details;
+
+        private Entry(long time, String timestamp, String ip, String category, String details) {
+            this.time = time;
+            this.timestamp = timestamp;
+            this.ip = ip;
+            this.category = category;
+            this.details = details;
+        }
+
+        static Entry parse(String line) {
+            int first = line.indexOf(", ");
+            int second = first < 0 ? -1 : line.indexOf(", ", first + 2);
+            int third = second < 0 ? -1 : line.indexOf(", ", second + 2);
+            if (third < 0) {
+                return null;
+            }
+            String timestamp = line.substring(0, first);
+            long time = toTimeNumber(timestamp);
+            if (time == 0) {
+                return null;
+            }
+            return new Entry(time, timestamp, line.substring(first + 2, second),
+                    line.substring(second + 2, third), line.substring(third + 2));
+        }
+
+        public String getTimestamp() {
+            return timestamp;
+        }
+
+        public String getIp() {
+            return ip;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        public String getDetails() {
+            return details;
+        }
+    }
+
+    /**
+     * 把yyyy-MM-dd HH:mm:ss格式的时间转换为yyyyMMddHHmmss格式的数字，便于比较
+     * @param timestamp 时间字符串
+     * @return 数字形式的时间，格式不正确时返回0
+     */
+    static long toTimeNumber(String timestamp) {
+        if (timestamp.length() != OperationLogArchive.LINE_TIME_LENGTH) {
+            return 0;
+        }
+        long value = 0;
+        for (int i = 0; i < timestamp.length(); i++) {
+            char c = timestamp.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+            } else if (c != '-' && c != ' ' && c != ':') {
+                return 0;
+            }
+        }
+        return value;
+    }
+
+    // 可以增长的int数组，用作倒排表
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    // 记录已读取字节数的读取器，用于定位最后一条完整记录
+    private static final class CountingReader {
+        private final DataInputStream in;
+        private long position;
+
+        CountingReader(DataInputStream in) {
+            this.in = in;
+        }
+
+        byte readByte() throws IOException {
+            byte value = in.readByte();
+            position += 1;
+            return value;
+        }
+
+        long readLong() throws IOException {
+            long value = in.readLong();
+            position += 8;
+            return value;
+        }
+
+        int readInt() throws IOException {
+            int value = in.readInt();
+            position += 4;
+            return value;
+        }
+
+        String readString() throws IOException {
+            int length = readInt();
+            if (length < 0 || length > (1 << 20)) {
+                throw new EOFException();
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            position += length;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        Set<String> readIds(List<String> dictionary) throws IOException {
+            int size = readInt();
+            Set<String> values = new LinkedHashSet<>();
+            for (int i = 0; i < size; i++) {
+                int id = readInt();
+                if (id < 0 || id >= dictionary.size()) {
+                    // 编号无效说明记录已损坏，按文件末尾处理
+                    throw new EOFException();
+                }
+                values.add(dictionary.get(id));
+            }
+            return values;
+        }
+    }
+}
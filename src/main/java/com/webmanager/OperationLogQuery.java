@@ -0,0 +1,244 @@
+package com.webmanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 操作日志的分页查询
+ * 从最新的日志开始向前查找，先用分段索引筛选出可能匹配的块，再逐条检查块中的日志。
+ * 游标记录下一条要检查的日志位置（分段第一条日志的时间、块序号、块内序号），
+ * 分段轮转后第一条日志的时间不变，所以翻页过程中发生轮转也不会重复或遗漏。
+ */
+public class OperationLogQuery {
+
+    // 单次请求最多读取的块数，没有索引可用的全文搜索也能在有限时间内返回
+    private static final int MAX_SCAN_BLOCKS = 2048;
+
+    private final long fromTime;
+    private final long toTime;
+    private final String ip;
+    private final String category;
+    private final String text;
+    private final int limit;
+    private final Cursor cursor;
+
+    /**
+     * 创建查询
+     * @param fromMillis 开始时间（毫秒时间戳，包含），小于等于0表示不限制
+     * @param toMillis 结束时间（毫秒时间戳，包含），小于等于0表示不限制
+     * @param ip IP地址，为空表示不限制
+     * @param category 功能分类，为空表示不限制
+     * @param text 要搜索的文字，不区分大小写，为空表示不限制
+     * @param cursor 上一页返回的游标，为空表示从最新的日志开始
+     * @param limit 每页条数
+     */
+    public OperationLogQuery(long fromMillis, long toMillis, String ip, String category, String text,
+                             String cursor, int limit) {
+        this.fromTime = toTimeNumber(fromMillis);
+        this.toTime = toTimeNumber(toMillis);
+        this.ip = emptyToNull(ip);
+        this.category = emptyToNull(category);
+        this.text = emptyToNull(text);
+        this.cursor = Cursor.parse(emptyToNull(cursor));
+        this.limit = limit;
+    }
+
+    /**
+     * 判断分段是否早于查询的开始时间，日志从新到旧查找，遇到这样的分段就可以停止
+     * @param segmentEnd 分段结束时间，格式为yyyy-MM-dd HH:mm:ss
+     * @return 是否早于开始时间
+     */
+    public boolean isBefore(String segmentEnd) {
+        return fromTime != 0 && OperationLogIndex.toTimeNumber(segmentEnd) < fromTime;
+    }
+
+    /**
+     * 判断分段是否晚于查询的结束时间或游标位置，这样的分段可以直接跳过
+     * @param segmentStart 分段开始时间，格式为yyyy-MM-dd HH:mm:ss
+     * @return 是否可以跳过
+     */
+    public boolean isAfter(String segmentStart) {
+        long start = OperationLogIndex.toTimeNumber(segmentStart);
+        return (toTime != 0 && start > toTime) || (cursor != null && start > cursor.segment);
+    }
+
+    /**
+     * 在一个分段中从新到旧查找匹配的日志
+     * @param segment 分段第一条日志的时间，用作游标中的分段标识
+     * @param index 分段索引
+     * @param file 分段文件
+     * @param compressed 是否为分块压缩的归档
+     * @param result 查询结果，匹配的日志追加到其中
+     * @return 本页是否已经结束
+     */
+    public boolean search(long segment, OperationLogIndex index, File file, boolean compressed, Result result)
+            throws IOException {
+        if (segment == 0 || (cursor != null && segment > cursor.segment)) {
+            return false;
+        }
+        List<OperationLogIndex.Block> blocks = index.findBlocks(ip, category, fromTime, toTime);
+        if (blocks.isEmpty() || !file.exists()) {
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (int i = blocks.size() - 1; i >= 0; i--) {
+                OperationLogIndex.Block block = blocks.get(i);
+                int next = block.getCount() - 1;
+                if (cursor != null && segment == cursor.segment) {
+                    if (block.getId() > cursor.block) {
+                        continue;
+                    }
+                    if (block.getId() == cursor.block) {
+                        next = Math.min(next, cursor.entry);
+                    }
+                }
+                if (result.scannedBlocks >= MAX_SCAN_BLOCKS) {
+                    // 读取的块太多，返回已找到的日志，剩下的由下一页继续
+                    result.nextCursor = new Cursor(segment, block.getId(), next).toString();
+                    return true;
+                }
+                result.scannedBlocks++;
+
+                List<String> lines = OperationLogArchive.readBlock(channel, block, compressed);
+                for (int entryIndex = Math.min(next, lines.size() - 1); entryIndex >= 0; entryIndex--) {
+                    if (result.entries.size() >= limit) {
+                        result.nextCursor = new Cursor(segment, block.getId(), entryIndex).toString();
+                        return true;
+                    }
+                    String line = lines.get(entryIndex);
+                    if (!prefilter(line)) {
+                        continue;
+                    }
+                    OperationLogIndex.Entry entry = OperationLogIndex.Entry.parse(line);
+                    if (entry != null && matches(entry)) {
+                        result.entries.add(entry);
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // 不拆分字符串，直接在原始日志行上比较IP和分类，过滤掉大部分不匹配的行
+    private boolean prefilter(String line) {
+        int first = line.indexOf(", ");
+        if (first < 0) {
+            return false;
+        }
+        int second = ip != null ? first + 2 + ip.length() : line.indexOf(", ", first + 2);
+        if (ip != null && !(line.startsWith(ip, first + 2) && line.startsWith(", ", second))) {
+            return false;
+        }
+        return category == null || (second >= 0 && line.startsWith(category, second + 2)
+                && line.startsWith(", ", second + 2 + category.length()));
+    }
+
+    private boolean matches(OperationLogIndex.Entry entry) {
+        if (fromTime != 0 && entry.time < fromTime) {
+            return false;
+        }
+        if (toTime != 0 && entry.time > toTime) {
+            return false;
+        }
+        if (ip != null && !ip.equals(entry.ip)) {
+            return false;
+        }
+        if (category != null && !category.equals(entry.category)) {
+            return false;
+        }
+        return text == null || containsIgnoreCase(entry.details, text)
+                || containsIgnoreCase(entry.ip, text) || containsIgnoreCase(entry.category, text);
+    }
+
+    private static boolean containsIgnoreCase(String value, String search) {
+        int last = value.length() - search.length();
+        for (int i = 0; i <= last; i++) {
+            if (value.regionMatches(true, i, search, 0, search.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 把毫秒时间戳转换为yyyyMMddHHmmss格式的数字
+    private static long toTimeNumber(long millis) {
+        if (millis <= 0) {
+            return 0;
+        }
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        return OperationLogIndex.toTimeNumber(OperationLogArchive.LINE_TIME_FORMAT.format(time));
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    /**
+     * 查询结果
+     */
+    public static final class Result {
+        private final List<OperationLogIndex.Entry> entries = new ArrayList<>();
+        private String nextCursor;
+        private boolean incomplete;
+        private int scannedBlocks;
+
+        public List<OperationLogIndex.Entry> getEntries() {
+            return entries;
+        }
+
+        // 获取下一页的游标，没有更多日志时返回null
+        public String getNextCursor() {
+            return nextCursor;
+        }
+
+        // 是否有归档还没有建立索引，没有被查询到
+        public boolean isIncomplete() {
+            return incomplete;
+        }
+
+        void markIncomplete() {
+            incomplete = true;
+        }
+    }
+
+    // 翻页游标，格式为"分段-块序号-块内序号"
+    private static final class Cursor {
+        private final long segment;
+        private final int block;
+        private final int entry;
+
+        Cursor(long segment, int block, int entry) {
+            this.segment = segment;
+            this.block = block;
+            this.entry = entry;
+        }
+
+        static Cursor parse(String value) {
+            if (value == null) {
+                return null;
+            }
+            String[] parts = value.split("-");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("无效的游标: " + value);
+            }
+            try {
+                return new Cursor(Long.parseLong(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("无效的游标: " + value);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return segment + "-" + block + "-" + entry;
+        }
+    }
+}
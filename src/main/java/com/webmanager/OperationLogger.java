@@ -1,40 +1,98 @@
 package com.webmanager;
 
 import java.io.*;
-import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class OperationLogger {
 
     private static final String LOG_FILE = "operation_logs.txt";
+    // 与归档使用相同的时间格式，DateTimeFormatter是线程安全的，可以在多个HTTP线程中共用
+    private static final DateTimeFormatter DATE_FORMAT = OperationLogArchive.LINE_TIME_FORMAT;
+    // 内存中保留的最近日志条数
+    private static final int RECENT_CAPACITY = 1000;
+    // 单个日志文件的大小上限，超过后轮转，另外每天也会轮转一次
+    private static final long MAX_SEGMENT_BYTES = 64L * 1024 * 1024;
     private final File logFile;
-    private final SimpleDateFormat dateFormat;
+    private final File indexFile;
+    private final OperationLogArchive archive;
+    private final AsyncLogAppender appender;
+    // 最近日志的内存环形缓冲，最新的在末尾
+    private final ArrayDeque<String> recentEntries = new ArrayDeque<>(RECENT_CAPACITY);
+    // 每次写入或清空日志时递增，用于判断日志是否有变化
+    private final AtomicLong revision = new AtomicLong();
+    // 当前日志文件的索引，轮转时替换
+    private volatile OperationLogIndex activeIndex;
+    // 轮转时持有写锁，查询当前文件时持有读锁，保证索引和文件内容一致
+    private final ReadWriteLock rotationLock = new ReentrantReadWriteLock();
 
-    public OperationLogger(WebManager plugin) {
+    /**
+     * @param plugin 插件
+     * @param queueCapacity 写入队列的容量
+     * @param syncIntervalMillis fsync的间隔（毫秒），越短断电时丢失的日志越少，写入吞吐量越低
+     * @param blockWhenFull 写入队列满时是否等待，为false时丢弃日志并计数
+     */
+    public OperationLogger(WebManager plugin, int queueCapacity, long syncIntervalMillis, boolean blockWhenFull) {
         this.logFile = new File(plugin.getDataFolder(), LOG_FILE);
-        this.dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        this.indexFile = OperationLogArchive.indexFileOf(logFile);
         // 确保数据文件夹存在
         plugin.getDataFolder().mkdirs();
+        this.archive = new OperationLogArchive(logFile, plugin.getLogger());
+        // 启动时从最新的日志分段中加载最近的日志
+        try {
+            recentEntries.addAll(archive.readRecent(RECENT_CAPACITY));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        this.activeIndex = openIndex();
+        archive.start();
+        // 启动异步写线程，日志文件轮转后交给归档压缩，写入的日志同时加入索引
+        this.appender = new AsyncLogAppender(logFile, plugin.getLogger(), queueCapacity, syncIntervalMillis,
+                blockWhenFull, MAX_SEGMENT_BYTES, this::rotate);
+        this.appender.setWriteListener(new IndexUpdater());
+        this.appender.start();
+    }
+
+    public OperationLogger(WebManager plugin) {
+        this(plugin, 8192, 1000, false); // 默认队列8192条，每秒fsync一次，队列满时丢弃
     }
 
     /**
-     * 记录操作日志
+     * 记录操作日志，只把日志放入写入队列，由后台线程批量写入文件
      * @param ip IP地址
      * @param category 功能分类
      * @param details 详细操作
      */
     public void logOperation(String ip, String category, String details) {
-        String timestamp = dateFormat.format(new Date());
-        String logEntry = String.format("%s, %s, %s, %s", timestamp, ip, category, details);
+        String timestamp = DATE_FORMAT.format(LocalDateTime.now());
+        // 去掉换行符，保证一条日志只占一行
+        String logEntry = (timestamp + ", " + ip + ", " + category + ", " + details).replace('\r', ' ').replace('\n', ' ');
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(logFile, true))) {
-            writer.write(logEntry);
-            writer.newLine();
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (!appender.append(logEntry)) {
+            // 写入队列已满或写线程已经停止，日志没有保存，也不显示在面板上，丢弃的条数由getDroppedCount报告
+            return;
+        }
+        synchronized (recentEntries) {
+            if (recentEntries.size() >= RECENT_CAPACITY) {
+                recentEntries.removeFirst();
+            }
+            recentEntries.addLast(logEntry);
         }
+        revision.incrementAndGet();
+    }
+
+    /**
+     * 获取日志版本号，日志有变化时版本号会增加
+     * @return 版本号
+     */
+    public long getRevision() {
+        return revision.get();
     }
 
     /**
@@ -43,35 +101,148 @@ public class OperationLogger {
      * @return 操作日志列表
      */
     public List<String> getRecentLogs(int limit) {
-        List<String> logs = new ArrayList<>();
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
 
-        if (!logFile.exists()) {
-            return logs;
+        // 内存中的缓冲足够时直接返回，不访问磁盘
+        if (limit <= RECENT_CAPACITY) {
+            synchronized (recentEntries) {
+                List<String> logs = new ArrayList<>(Math.min(limit, recentEntries.size()));
+                int skip = recentEntries.size() - limit;
+                for (String entry : recentEntries) {
+                    if (skip-- > 0) {
+                        continue;
+                    }
+                    logs.add(entry);
+                }
+                return logs;
+            }
         }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(logFile))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                logs.add(line);
+        try {
+            return archive.readRecent(limit);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * 从新到旧分页查询操作日志，包括已经压缩归档的日志
+     * @param query 查询条件
+     * @return 查询结果
+     */
+    public OperationLogQuery.Result search(OperationLogQuery query) {
+        OperationLogQuery.Result result = new OperationLogQuery.Result();
+        try {
+            rotationLock.readLock().lock();
+            try {
+                OperationLogIndex index = activeIndex;
+                if (query.search(index.getFirstTime(), index, logFile, false, result)) {
+                    return result;
+                }
+            } finally {
+                rotationLock.readLock().unlock();
+            }
+
+            List<OperationLogArchive.Segment> segments = archive.listSegments();
+            for (int i = segments.size() - 1; i >= 0; i--) {
+                OperationLogArchive.Segment segment = segments.get(i);
+                if (query.isBefore(segment.getEnd())) {
+                    break;
+                }
+                if (query.isAfter(segment.getStart())) {
+                    continue;
+                }
+                OperationLogIndex index = archive.getIndex(segment);
+                if (index == null) {
+                    result.markIncomplete();
+                    continue;
+                }
+                long key = OperationLogIndex.toTimeNumber(segment.getStart());
+                if (query.search(key, index, segment.getFile(), segment.isCompressed(), result)) {
+                    return result;
+                }
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
+        return result;
+    }
 
-        // 只返回最近的limit条日志
-        if (logs.size() > limit) {
-            return logs.subList(logs.size() - limit, logs.size());
+    // 打开当前日志文件的索引，索引文件损坏时删除后重建
+    private OperationLogIndex openIndex() {
+        try {
+            return OperationLogIndex.openForAppend(logFile, indexFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        indexFile.delete();
+        try {
+            return OperationLogIndex.openForAppend(logFile, indexFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+    }
 
-        return logs;
+    // 由写线程调用，归档已关闭的日志文件并为新文件创建索引
+    private void rotate(File closedFile) throws IOException {
+        rotationLock.writeLock().lock();
+        try {
+            OperationLogIndex closedIndex = activeIndex;
+            closedIndex.seal();
+            closedIndex.close();
+            try {
+                archive.rotate(closedFile);
+            } finally {
+                activeIndex = openIndex();
+            }
+        } finally {
+            rotationLock.writeLock().unlock();
+        }
     }
 
     /**
-     * 清空操作日志
+     * 清空当前的操作日志文件，已归档的日志由保留策略管理
      */
     public void clearLogs() {
-        if (logFile.exists()) {
-            logFile.delete();
+        appender.truncate();
+        synchronized (recentEntries) {
+            recentEntries.clear();
+        }
+        revision.incrementAndGet();
+    }
+
+    /**
+     * 获取因写入队列已满而丢弃的日志条数
+     * @return 丢弃条数
+     */
+    public long getDroppedCount() {
+        return appender.getDroppedCount();
+    }
+
+    /**
+     * 关闭日志记录器，等待队列中的日志全部写入磁盘
+     */
+    public void close() {
+        appender.close();
+        activeIndex.close();
+        archive.close();
+    }
+
+    /**
+     * 把写入文件的日志加入当前索引
+     */
+    private class IndexUpdater implements AsyncLogAppender.WriteListener {
+        @Override
+        public void written(List<String> lines, long offset) {
+            activeIndex.append(lines, offset);
+        }
+
+        @Override
+        public void truncated() {
+            activeIndex.truncate();
         }
     }
 }
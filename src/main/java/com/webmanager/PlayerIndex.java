@@ -0,0 +1,245 @@
+package com.webmanager;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerGameModeChangeEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 在线玩家索引
+ * 由玩家进入、退出、切换游戏模式和切换世界的事件增量维护，不再每次采集都遍历所有玩家。
+ * 每次变化生成新的不可变玩家列表并递增版本号，通过volatile引用发布，HTTP线程读取时不加锁。
+ * 最近的变化保存在环形缓冲中，客户端可以只获取某个版本之后的进入、退出和变化。
+ */
+public class PlayerIndex implements Listener {
+
+    private final int maxChanges;
+    private final AtomicReferenceArray<Change> changes;
+    private volatile Snapshot state = new Snapshot(0, Collections.emptyList());
+
+    public PlayerIndex(int maxChanges) {
+        this.maxChanges = maxChanges;
+        this.changes = new AtomicReferenceArray<>(maxChanges);
+    }
+
+    public PlayerIndex() {
+        this(1024); // 默认保留最近1024次变化
+    }
+
+    // 注册监听器，并加入已经在线的玩家（插件重载时），必须在主线程中调用
+    public void register(WebManager plugin) {
+        Bukkit.getPluginManager().registerEvents(this, plugin);
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            apply(Change.JOIN, PlayerInfo.of(player));
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        apply(Change.JOIN, PlayerInfo.of(event.getPlayer()));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        PlayerInfo player = state.find(event.getPlayer().getUniqueId().toString());
+        if (player != null) {
+            apply(Change.QUIT, player);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onGameModeChange(PlayerGameModeChangeEvent event) {
+        PlayerInfo player = state.find(event.getPlayer().getUniqueId().toString());
+        if (player != null) {
+            // 事件在修改之前触发，使用事件中的新游戏模式
+            apply(Change.UPDATE, player.withGamemode(event.getNewGameMode().name()));
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChangedWorld(PlayerChangedWorldEvent event) {
+        PlayerInfo player = state.find(event.getPlayer().getUniqueId().toString());
+        if (player != null) {
+            apply(Change.UPDATE, player.withWorld(event.getPlayer().getWorld().getName()));
+        }
+    }
+
+    // 生成新的玩家列表并记录变化，事件都在主线程触发，加锁只是为了保证版本号连续
+    private synchronized void apply(String type, PlayerInfo player) {
+        Snapshot current = state;
+        List<PlayerInfo> players = new ArrayList<>(current.players.size() + 1);
+        for (PlayerInfo existing : current.players) {
+            if (!existing.uuid.equals(player.uuid)) {
+                players.add(existing);
+            } else if (type.equals(Change.UPDATE)) {
+                // 变化的玩家保持原来的位置
+                players.add(player);
+            }
+        }
+        if (type.equals(Change.JOIN)) {
+            players.add(player);
+        }
+        long revision = current.revision + 1;
+        // 先写入变化再发布新版本，读到新版本的线程一定能读到对应的变化
+        changes.set((int) (revision % maxChanges), new Change(revision, type, player));
+        state = new Snapshot(revision, Collections.unmodifiableList(players));
+    }
+
+    // 获取当前版本的玩家列表，任何线程都可以调用
+    public Snapshot getSnapshot() {
+        return state;
+    }
+
+    /**
+     * 获取两个版本之间的变化
+     * @param since 客户端已有的版本号
+     * @param end 要获取到的版本号（包含），通常是getSnapshot()的版本号
+     * @return 按版本号排列的变化，版本号太旧、变化已经被覆盖时返回null，客户端需要重新获取完整列表
+     */
+    public List<Change> getChanges(long since, long end) {
+        if (since > end || end - since > maxChanges) {
+            return null;
+        }
+        List<Change> result = new ArrayList<>((int) (end - since));
+        for (long revision = since + 1; revision <= end; revision++) {
+            Change change = changes.get((int) (revision % maxChanges));
+            if (change == null || change.revision != revision) {
+                return null;
+            }
+            result.add(change);
+        }
+        return result;
+    }
+
+    /**
+     * 某个版本的玩家列表，创建后不再修改
+     */
+    public static final class Snapshot {
+        private final long revision;
+        private final List<PlayerInfo> players;
+        private final Map<String, PlayerInfo> byUuid;
+
+        Snapshot(long revision, List<PlayerInfo> players) {
+            this.revision = revision;
+            this.players = players;
+            this.byUuid = new HashMap<>(players.size() * 2);
+            for (PlayerInfo player : players) {
+                byUuid.put(player.uuid, player);
+            }
+        }
+
+        // 版本号，每次变化加一
+        public long getRevision() {
+            return revision;
+        }
+
+        // 在线玩家，按进入服务器的顺序排列
+        public List<PlayerInfo> getPlayers() {
+            return players;
+        }
+
+        // 按UUID查找玩家，不在线时返回null
+        public PlayerInfo find(String uuid) {
+            return byUuid.get(uuid);
+        }
+    }
+
+    /**
+     * 一次变化
+     */
+    public static final class Change {
+        public static final String JOIN = "join";
+        public static final String QUIT = "quit";
+        public static final String UPDATE = "update";
+
+        private final long revision;
+        private final String type;
+        private final PlayerInfo player;
+
+        Change(long revision, String type, PlayerInfo player) {
+            this.revision = revision;
+            this.type = type;
+            this.player = player;
+        }
+
+        public long getRevision() {
+            return revision;
+        }
+
+        // 变化类型：join、quit或update
+        public String getType() {
+            return type;
+        }
+
+        // 变化后的玩家信息，退出时是退出前的信息
+        public PlayerInfo getPlayer() {
+            return player;
+        }
+    }
+
+    /**
+     * 单个在线玩家的信息，创建后不再修改
+     */
+    public static final class PlayerInfo {
+        private final String name;
+        private final String uuid;
+        private final String ip;
+        private final String gamemode;
+        private final String world;
+
+        public PlayerInfo(String name, String uuid, String ip, String gamemode, String world) {
+            this.name = name;
+            this.uuid = uuid;
+            this.ip = ip;
+            this.gamemode = gamemode;
+            this.world = world;
+        }
+
+        // 读取玩家当前的信息，必须在主线程中调用
+        static PlayerInfo of(Player player) {
+            String ip = player.getAddress() != null ? player.getAddress().getAddress().getHostAddress() : "未知";
+            return new PlayerInfo(player.getName(), player.getUniqueId().toString(), ip,
+                    player.getGameMode().name(), player.getWorld().getName());
+        }
+
+        PlayerInfo withGamemode(String gamemode) {
+            return new PlayerInfo(name, uuid, ip, gamemode, world);
+        }
+
+        PlayerInfo withWorld(String world) {
+            return new PlayerInfo(name, uuid, ip, gamemode, world);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getUuid() {
+            return uuid;
+        }
+
+        public String getIp() {
+            return ip;
+        }
+
+        public String getGamemode() {
+            return gamemode;
+        }
+
+        public String getWorld() {
+            return world;
+        }
+    }
+}
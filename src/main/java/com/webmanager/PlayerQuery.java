@@ -0,0 +1,145 @@
+package com.webmanager;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 在线玩家的分页查询
+ * 在PlayerIndex发布的玩家列表上筛选、排序和分页，只输出请求的字段，不需要主线程参与。
+ */
+public class PlayerQuery {
+
+    private static final String[] ALL_FIELDS = {"name", "uuid", "ip", "gamemode", "world"};
+
+    private final String[] fields;
+    private final Comparator<PlayerIndex.PlayerInfo> order;
+    private final String text;
+    private final int offset;
+    private final int limit;
+
+    /**
+     * 创建查询
+     * @param fields 逗号分隔的字段（name、uuid、ip、gamemode、world），为空表示全部字段
+     * @param sort 排序字段（name、ip、gamemode、world），前面加"-"表示倒序，为空表示按进入服务器的顺序
+     * @param text 要搜索的文字，匹配名称、UUID或IP，不区分大小写，为空表示不限制
+     * @param offset 跳过的条数
+     * @param limit 每页条数
+     * @throws IllegalArgumentException 字段或排序方式无效
+     */
+    public PlayerQuery(String fields, String sort, String text, int offset, int limit) {
+        this.fields = parseFields(fields);
+        this.order = parseSort(sort);
+        this.text = text == null || text.isEmpty() ? null : text.toLowerCase(Locale.ROOT);
+        this.offset = Math.max(0, offset);
+        this.limit = limit;
+    }
+
+    /**
+     * 获取一页匹配的玩家
+     * @param players 按进入顺序排列的在线玩家
+     * @param page 本页的玩家，会被追加到其中
+     * @return 匹配的玩家总数
+     */
+    public int page(List<PlayerIndex.PlayerInfo> players, List<PlayerIndex.PlayerInfo> page) {
+        List<PlayerIndex.PlayerInfo> matched;
+        if (text == null) {
+            matched = players;
+        } else {
+            matched = new ArrayList<>();
+            for (PlayerIndex.PlayerInfo player : players) {
+                if (matches(player)) {
+                    matched.add(player);
+                }
+            }
+        }
+        if (order != null) {
+            matched = new ArrayList<>(matched);
+            matched.sort(order);
+        }
+        for (int i = offset; i < matched.size() && page.size() < limit; i++) {
+            page.add(matched.get(i));
+        }
+        return matched.size();
+    }
+
+    // 获取跳过的条数
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * 写入玩家信息，只包含请求的字段
+     * @param json JSON输出
+     * @param player 玩家
+     */
+    public void writePlayer(JsonWriter json, PlayerIndex.PlayerInfo player) throws IOException {
+        json.beginObject();
+        for (String field : fields) {
+            json.name(field).value(valueOf(player, field));
+        }
+        json.endObject();
+    }
+
+    private boolean matches(PlayerIndex.PlayerInfo player) {
+        return player.getName().toLowerCase(Locale.ROOT).contains(text)
+                || player.getUuid().contains(text)
+                || player.getIp().contains(text);
+    }
+
+    private static String valueOf(PlayerIndex.PlayerInfo player, String field) {
+        switch (field) {
+            case "name": return player.getName();
+            case "uuid": return player.getUuid();
+            case "ip": return player.getIp();
+            case "gamemode": return player.getGamemode();
+            case "world": return player.getWorld();
+            default: throw new IllegalArgumentException("无效的字段: " + field);
+        }
+    }
+
+    private static String[] parseFields(String fields) {
+        if (fields == null || fields.isEmpty()) {
+            return ALL_FIELDS;
+        }
+        List<String> result = new ArrayList<>();
+        for (String field : fields.split(",")) {
+            field = field.trim();
+            if (field.isEmpty() || result.contains(field)) {
+                continue;
+            }
+            if (!isField(field)) {
+                throw new IllegalArgumentException("无效的字段: " + field);
+            }
+            result.add(field);
+        }
+        return result.toArray(new String[0]);
+    }
+
+    private static Comparator<PlayerIndex.PlayerInfo> parseSort(String sort) {
+        if (sort == null || sort.isEmpty()) {
+            return null;
+        }
+        boolean descending = sort.startsWith("-");
+        String field = descending ? sort.substring(1) : sort;
+        if (!isField(field) || field.equals("uuid")) {
+            throw new IllegalArgumentException("无效的排序方式: " + sort);
+        }
+        // 相同时按名称排序，保证翻页时顺序稳定
+        Comparator<PlayerIndex.PlayerInfo> order = Comparator
+                .comparing((PlayerIndex.PlayerInfo player) -> valueOf(player, field), String.CASE_INSENSITIVE_ORDER)
+                .thenComparing(PlayerIndex.PlayerInfo::getName, String.CASE_INSENSITIVE_ORDER);
+        return descending ? order.reversed() : order;
+    }
+
+    private static boolean isField(String field) {
+        for (String name : ALL_FIELDS) {
+            if (name.equals(field)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,338 @@
+package com.webmanager;
+
+import org.bukkit.Bukkit;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.HandlerList;
+import org.bukkit.plugin.RegisteredListener;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 插件事件监听耗时统计
+ * 开启后把所有插件注册的监听器替换为计时的包装，每次同步事件调用时记录耗时，按监听器和事件类型
+ * 累计到LongAdder中，报告时再按插件和事件汇总排序。包装只在开启期间存在，关闭后恢复原来的监听器，
+ * 之后注册的监听器由定时任务补充包装。异步事件不在主线程执行，不计入耗时。
+ *
+ * 每次调用的额外开销是两次System.nanoTime和几次LongAdder累加，不分配对象，可以在高峰期一直开启。
+ * Bukkit API无法包装其他插件的调度任务，调度任务只统计数量，耗时需要使用主线程性能分析查看。
+ * 调度任务的数量通过SyncGateway在主线程读取，多个请求同时读取时共用同一次结果。
+ */
+public class PluginCostMonitor {
+
+    private final WebManager plugin;
+    private final long rescanTicks;
+    private final Queue<TimedListener> listeners = new ConcurrentLinkedQueue<>();
+    private final Map<Class<?>, EventStats> events = new ConcurrentHashMap<>();
+    private BukkitTask rescanTask;
+    private volatile boolean running;
+    private volatile long startedAt;
+    private volatile long startedNanos;
+    private volatile long stoppedNanos;
+
+    public PluginCostMonitor(WebManager plugin, long rescanTicks) {
+        this.plugin = plugin;
+        this.rescanTicks = rescanTicks;
+    }
+
+    public PluginCostMonitor(WebManager plugin) {
+        this(plugin, 200L); // 默认每10秒检查一次新注册的监听器
+    }
+
+    /**
+     * 清空之前的结果并开始统计，监听器在下一个tick包装
+     * @return 已经在统计时返回false
+     */
+    public synchronized boolean start() {
+        if (running) {
+            return false;
+        }
+        listeners.clear();
+        events.clear();
+        startedAt = System.currentTimeMillis();
+        startedNanos = System.nanoTime();
+        stoppedNanos = 0;
+        running = true;
+        rescanTask = Bukkit.getScheduler().runTaskTimer(plugin, this::install, 1L, rescanTicks);
+        return true;
+    }
+
+    // 停止统计，保留结果，监听器在下一个tick恢复；没有在统计时返回false
+    public synchronized boolean stop() {
+        if (!running) {
+            return false;
+        }
+        finish();
+        Bukkit.getScheduler().runTask(plugin, this::uninstall);
+        return true;
+    }
+
+    // 插件关闭时在主线程调用，立即恢复监听器
+    public synchronized void close() {
+        if (running) {
+            finish();
+        }
+        uninstall();
+    }
+
+    private void finish() {
+        running = false;
+        stoppedNanos = System.nanoTime();
+        if (rescanTask != null) {
+            rescanTask.cancel();
+            rescanTask = null;
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // 包装还没有包装的监听器，必须在主线程中调用
+    private void install() {
+        if (!running) {
+            return;
+        }
+        for (HandlerList handlers : HandlerList.getHandlerLists()) {
+            RegisteredListener[] registered = handlers.getRegisteredListeners();
+            boolean changed = false;
+            for (RegisteredListener listener : registered) {
+                if (!(listener instanceof TimedListener)) {
+                    changed = true;
+                    break;
+                }
+            }
+            if (!changed) {
+                continue;
+            }
+            List<RegisteredListener> replacement = new ArrayList<>(registered.length);
+            for (RegisteredListener listener : registered) {
+                if (listener instanceof TimedListener) {
+                    replacement.add(listener);
+                } else {
+                    TimedListener timed = new TimedListener(listener);
+                    listeners.add(timed);
+                    replacement.add(timed);
+                }
+            }
+            replace(handlers, registered, replacement);
+        }
+    }
+
+    // 恢复原来的监听器，必须在主线程中调用
+    private void uninstall() {
+        for (HandlerList handlers : HandlerList.getHandlerLists()) {
+            RegisteredListener[] registered = handlers.getRegisteredListeners();
+            boolean changed = false;
+            List<RegisteredListener> replacement = new ArrayList<>(registered.length);
+            for (RegisteredListener listener : registered) {
+                if (listener instanceof TimedListener) {
+                    changed = true;
+                    replacement.add(((TimedListener) listener).delegate);
+                } else {
+                    replacement.add(listener);
+                }
+            }
+            if (changed) {
+                replace(handlers, registered, replacement);
+            }
+        }
+    }
+
+    /**
+     * 按原来的顺序替换监听器
+     * 注册和整理监听器数组都持有HandlerList的锁，整个替换过程持有锁，异步事件不会看到替换了一半的列表
+     */
+    private static void replace(HandlerList handlers, RegisteredListener[] registered, List<RegisteredListener> replacement) {
+        synchronized (handlers) {
+            for (RegisteredListener listener : registered) {
+                handlers.unregister(listener);
+            }
+            for (RegisteredListener listener : replacement) {
+                handlers.register(listener);
+            }
+        }
+    }
+
+    // 统计经过的纳秒数，停止后不再增加
+    private long getElapsedNanos() {
+        if (startedNanos == 0) {
+            return 0;
+        }
+        return (stoppedNanos != 0 ? stoppedNanos : System.nanoTime()) - startedNanos;
+    }
+
+    /**
+     * 按插件汇总监听器耗时
+     * @return 插件名称到[调用次数, 耗时纳秒]的映射
+     */
+    public Map<String, long[]> getPluginTotals() {
+        Map<String, long[]> totals = new HashMap<>();
+        for (TimedListener listener : listeners) {
+            long[] total = totals.computeIfAbsent(listener.getPlugin().getName(), key -> new long[2]);
+            total[0] += listener.calls.sum();
+            total[1] += listener.nanos.sum();
+        }
+        return totals;
+    }
+
+    /**
+     * 在主线程统计各插件的调度任务数量
+     * @return 插件名称到[同步任务数, 异步任务数]的映射，由多个调用方共用，不能修改
+     */
+    public CompletableFuture<Map<String, int[]>> countTasks() {
+        return plugin.getSyncGateway().submit("pluginTasks", PluginCostMonitor::countPendingTasks);
+    }
+
+    private static Map<String, int[]> countPendingTasks() {
+        Map<String, int[]> tasks = new HashMap<>();
+        for (BukkitTask task : Bukkit.getScheduler().getPendingTasks()) {
+            int[] count = tasks.computeIfAbsent(task.getOwner().getName(), key -> new int[2]);
+            count[task.isSync() ? 0 : 1]++;
+        }
+        return tasks;
+    }
+
+    /**
+     * 写出按插件、事件和监听器排序的耗时，以及各插件的调度任务数量
+     * @param json JSON输出
+     * @param limit 监听器最多列出的数量
+     * @param tasks countTasks的结果，为null时调度任务写为null
+     */
+    public void writeReport(JsonWriter json, int limit, Map<String, int[]> tasks) throws IOException {
+        long elapsed = getElapsedNanos();
+        json.beginObject();
+        json.name("running").value(running);
+        json.name("startedAt").value(startedAt);
+        json.name("durationMillis").value(elapsed / 1_000_000);
+        json.name("listeners").value(listeners.size());
+
+        // percent是耗时占统计时间的比例，即平均每秒有多少主线程时间花在这个插件的监听器上
+        List<Map.Entry<String, long[]>> plugins = new ArrayList<>(getPluginTotals().entrySet());
+        plugins.sort((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]));
+        json.name("plugins").beginArray();
+        for (Map.Entry<String, long[]> entry : plugins) {
+            json.beginObject();
+            json.name("name").value(entry.getKey());
+            writeCost(json, entry.getValue()[0], entry.getValue()[1], elapsed);
+            json.endObject();
+        }
+        json.endArray();
+
+        List<EventStats> eventList = new ArrayList<>(events.values());
+        eventList.sort((a, b) -> Long.compare(b.nanos.sum(), a.nanos.sum()));
+        json.name("events").beginArray();
+        for (EventStats stats : eventList) {
+            json.beginObject();
+            json.name("event").value(stats.name);
+            writeCost(json, stats.calls.sum(), stats.nanos.sum(), elapsed);
+            json.endObject();
+        }
+        json.endArray();
+
+        List<TimedListener> listenerList = new ArrayList<>(listeners);
+        listenerList.sort((a, b) -> Long.compare(b.nanos.sum(), a.nanos.sum()));
+        json.name("topListeners").beginArray();
+        for (TimedListener listener : listenerList.subList(0, Math.min(limit, listenerList.size()))) {
+            json.beginObject();
+            json.name("plugin").value(listener.getPlugin().getName());
+            json.name("listener").value(listener.getListener().getClass().getName());
+            json.name("priority").value(listener.getPriority().name());
+            writeCost(json, listener.calls.sum(), listener.nanos.sum(), elapsed);
+            json.endObject();
+        }
+        json.endArray();
+
+        // 调度任务无法计时，只列出每个插件当前的任务数量
+        if (tasks == null) {
+            json.name("tasks").nullValue();
+            json.endObject();
+            return;
+        }
+        List<Map.Entry<String, int[]>> taskList = new ArrayList<>(tasks.entrySet());
+        taskList.sort((a, b) -> Integer.compare(b.getValue()[0], a.getValue()[0]));
+        json.name("tasks").beginArray();
+        for (Map.Entry<String, int[]> entry : taskList) {
+            json.beginObject();
+            json.name("plugin").value(entry.getKey());
+            json.name("sync").value(entry.getValue()[0]);
+            json.name("async").value(entry.getValue()[1]);
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+    }
+
+    private static void writeCost(JsonWriter json, long calls, long nanos, long elapsed) throws IOException {
+        json.name("calls").value(calls);
+        json.name("millis").value(nanos / 1e6);
+        json.name("meanMicros").value(calls == 0 ? 0 : nanos / 1e3 / calls);
+        json.name("percent").value(elapsed == 0 ? 0 : nanos * 100.0 / elapsed);
+    }
+
+    // 按实际的事件类型获取统计，子类事件和父类共用同一个HandlerList时也能分开统计
+    private EventStats eventStats(Class<?> type) {
+        EventStats stats = events.get(type);
+        if (stats == null) {
+            stats = events.computeIfAbsent(type, key -> new EventStats(key.getSimpleName()));
+        }
+        return stats;
+    }
+
+    /**
+     * 单个事件类型的统计
+     */
+    private static final class EventStats {
+        private final String name;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        EventStats(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * 计时的监听器包装，监听器、插件、优先级和原来的相同，HandlerList.unregisterAll仍然能找到它
+     */
+    private final class TimedListener extends RegisteredListener {
+        private final RegisteredListener delegate;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        TimedListener(RegisteredListener delegate) {
+            super(delegate.getListener(), (listener, event) -> delegate.callEvent(event), delegate.getPriority(),
+                    delegate.getPlugin(), delegate.isIgnoringCancelled());
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void callEvent(Event event) throws EventException {
+            if (event.isAsynchronous()) {
+                delegate.callEvent(event);
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                delegate.callEvent(event);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                calls.increment();
+                nanos.add(elapsed);
+                EventStats stats = eventStats(event.getClass());
+                stats.calls.increment();
+                stats.nanos.add(elapsed);
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.webmanager;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 以Prometheus文本格式（0.0.4）导出监控指标
+ * 所有数值都来自已经发布的数据：MetricsHistory最近一次采样、TickMonitor的环形缓冲、主线程快照
+ * 和各个过滤器的计数器，抓取时不需要主线程参与，也不会改变其他接口看到的CPU使用率。
+ */
+public class PrometheusExporter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final WebManager plugin;
+    private final WebHttpServer server;
+
+    public PrometheusExporter(WebManager plugin, WebHttpServer server) {
+        this.plugin = plugin;
+        this.server = server;
+    }
+
+    /**
+     * 写入所有指标
+     * @param out 输出，调用方负责关闭
+     */
+    public void write(Writer out) throws IOException {
+        writeResources(out);
+        writeTicks(out);
+        writeMemory(out);
+        writeHttp(out);
+        writeSyncGateway(out);
+        writePluginCost(out);
+        writeLimits(out);
+    }
+
+    private void writeResources(Writer out) throws IOException {
+        ResourceMonitor monitor = plugin.getResourceMonitor();
+        double[] latest = plugin.getMetricsHistory().getLatest();
+        if (latest != null) {
+            gauge(out, "webmanager_cpu_usage_percent", "进程CPU使用率（最近一次采样）",
+                    latest[MetricsHistory.indexOf("cpu")]);
+            gauge(out, "webmanager_memory_usage_percent", "JVM内存使用率（最近一次采样）",
+                    latest[MetricsHistory.indexOf("memory")]);
+            gauge(out, "webmanager_system_memory_usage_percent", "系统内存使用率（最近一次采样）",
+                    latest[MetricsHistory.indexOf("systemMemory")]);
+            gauge(out, "webmanager_disk_usage_percent", "服务器目录所在分区的磁盘使用率（最近一次采样）",
+                    latest[MetricsHistory.indexOf("disk")]);
+        }
+        gauge(out, "webmanager_system_cpu_usage_percent", "系统CPU使用率", monitor.getSystemCpuUsage());
+        header(out, "process_cpu_seconds_total", "进程累计使用的CPU时间（秒）", "counter");
+        sample(out, "process_cpu_seconds_total", null, monitor.getProcessCpuSeconds());
+        gauge(out, "webmanager_entities", "实体数量", monitor.getEntityCount());
+        gauge(out, "webmanager_loaded_chunks", "已加载的区块数量", monitor.getLoadedChunksCount());
+        gauge(out, "webmanager_players_online", "在线玩家数量", monitor.getOnlinePlayerCount());
+        gauge(out, "webmanager_players_max", "最大玩家数量", monitor.getMaxPlayerCount());
+    }
+
+    private void writeTicks(Writer out) throws IOException {
+        ResourceMonitor monitor = plugin.getResourceMonitor();
+        header(out, "webmanager_tps", "滚动TPS", "gauge");
+        sample(out, "webmanager_tps", "window=\"5s\"", monitor.getTPS());
+        sample(out, "webmanager_tps", "window=\"1m\"", monitor.getTPS(60));
+        sample(out, "webmanager_tps", "window=\"5m\"", monitor.getTPS(300));
+        TickMonitor.TickStats stats = monitor.getTickStats(60);
+        header(out, "webmanager_tick_interval_ms", "最近1分钟相邻两个tick开始的间隔（毫秒），不是tick本身的耗时，服务器不卡顿时约为50", "gauge");
+        sample(out, "webmanager_tick_interval_ms", "stat=\"mean\"", stats.getMeanInterval());
+        sample(out, "webmanager_tick_interval_ms", "stat=\"p50\"", stats.getP50Interval());
+        sample(out, "webmanager_tick_interval_ms", "stat=\"p95\"", stats.getP95Interval());
+        sample(out, "webmanager_tick_interval_ms", "stat=\"p99\"", stats.getP99Interval());
+        sample(out, "webmanager_tick_interval_ms", "stat=\"max\"", stats.getMaxInterval());
+        header(out, "webmanager_lagged_ticks_total", "间隔超过60毫秒的tick总数", "counter");
+        sample(out, "webmanager_lagged_ticks_total", null, stats.getTotalLaggedTicks());
+    }
+
+    private void writeMemory(Writer out) throws IOException {
+        MemoryMonitor memory = plugin.getMemoryMonitor();
+        header(out, "webmanager_gc_duration_seconds", "每次GC的耗时，concurrent为true时是并发阶段而不是停顿", "histogram");
+        for (MemoryMonitor.CollectorStats collector : memory.getCollectors()) {
+            histogram(out, "webmanager_gc_duration_seconds", "collector=\"" + escape(collector.getName())
+                    + "\",concurrent=\"" + collector.isConcurrent() + "\"", collector.getHistogram());
+        }
+        header(out, "webmanager_memory_pool_used_bytes", "各内存池的用量", "gauge");
+        for (MemoryPoolMXBean pool : memory.getMemoryPools()) {
+            sample(out, "webmanager_memory_pool_used_bytes", "pool=\"" + escape(pool.getName()) + "\"",
+                    pool.getUsage().getUsed());
+        }
+        header(out, "webmanager_memory_pool_max_bytes", "各内存池的上限，没有上限时为-1", "gauge");
+        for (MemoryPoolMXBean pool : memory.getMemoryPools()) {
+            sample(out, "webmanager_memory_pool_max_bytes", "pool=\"" + escape(pool.getName()) + "\"",
+                    pool.getUsage().getMax());
+        }
+        header(out, "webmanager_buffer_pool_used_bytes", "直接内存和内存映射文件的用量", "gauge");
+        for (BufferPoolMXBean pool : memory.getBufferPools()) {
+            sample(out, "webmanager_buffer_pool_used_bytes", "pool=\"" + escape(pool.getName()) + "\"",
+                    pool.getMemoryUsed());
+        }
+        header(out, "webmanager_allocated_bytes_total", "累计分配的堆内存", "counter");
+        sample(out, "webmanager_allocated_bytes_total", "thread=\"all\"", memory.getAllocatedBytes());
+        sample(out, "webmanager_allocated_bytes_total", "thread=\"main\"", memory.getMainThreadAllocatedBytes());
+    }
+
+    private void writeHttp(Writer out) throws IOException {
+        HttpMetrics metrics = server.getHttpMetrics();
+        // 按路径排序，输出顺序稳定
+        List<String> paths = new ArrayList<>(metrics.getRoutes().keySet());
+        paths.sort(null);
+
+        header(out, "webmanager_http_requests_total", "按处理器和状态码统计的HTTP请求数", "counter");
+        for (String path : paths) {
+            for (Map.Entry<Integer, LongAdder> status : metrics.getRoutes().get(path).getStatuses().entrySet()) {
+                sample(out, "webmanager_http_requests_total",
+                        "handler=\"" + escape(path) + "\",code=\"" + status.getKey() + "\"", status.getValue().sum());
+            }
+        }
+        header(out, "webmanager_http_request_duration_seconds", "HTTP请求处理耗时", "histogram");
+        for (String path : paths) {
+            histogram(out, "webmanager_http_request_duration_seconds", "handler=\"" + escape(path) + "\"",
+                    metrics.getRoutes().get(path).getLatency());
+        }
+
+        header(out, "webmanager_sync_call_duration_seconds", "HTTP线程等待主线程执行任务的耗时", "histogram");
+        histogram(out, "webmanager_sync_call_duration_seconds", null, metrics.getSyncCalls());
+        header(out, "webmanager_sync_call_timeouts_total", "等待主线程超时的次数", "counter");
+        sample(out, "webmanager_sync_call_timeouts_total", null, metrics.getSyncTimeoutCount());
+
+        header(out, "webmanager_commands_total", "按结果统计的命令执行次数", "counter");
+        for (Map.Entry<String, LongAdder> command : metrics.getCommands().entrySet()) {
+            sample(out, "webmanager_commands_total", "result=\"" + escape(command.getKey()) + "\"",
+                    command.getValue().sum());
+        }
+    }
+
+    private void writeSyncGateway(Writer out) throws IOException {
+        SyncGateway gateway = plugin.getSyncGateway();
+        gauge(out, "webmanager_sync_queue_depth", "等待在主线程执行的工作数量", gateway.getQueueDepth());
+        gauge(out, "webmanager_sync_last_tick_seconds", "最近一个tick处理面板工作用的时间", gateway.getLastTickNanos() / 1e9);
+        header(out, "webmanager_sync_tick_seconds_total", "处理面板工作累计用的主线程时间", "counter");
+        sample(out, "webmanager_sync_tick_seconds_total", null, gateway.getTotalNanos() / 1e9);
+        header(out, "webmanager_sync_steps_total", "在主线程执行的步数", "counter");
+        sample(out, "webmanager_sync_steps_total", null, gateway.getStepCount());
+        header(out, "webmanager_sync_submitted_total", "提交到主线程的工作数量", "counter");
+        sample(out, "webmanager_sync_submitted_total", null, gateway.getSubmittedCount());
+        header(out, "webmanager_sync_coalesced_total", "共用了相同读取结果的次数", "counter");
+        sample(out, "webmanager_sync_coalesced_total", null, gateway.getCoalescedCount());
+        header(out, "webmanager_sync_deferred_ticks_total", "预算用完后工作留到下一个tick的次数", "counter");
+        sample(out, "webmanager_sync_deferred_ticks_total", null, gateway.getDeferredTicks());
+    }
+
+    private void writePluginCost(Writer out) throws IOException {
+        // 只有开启插件耗时统计后才有数据，停止后保留最后一次统计的结果
+        Map<String, long[]> totals = plugin.getPluginCostMonitor().getPluginTotals();
+        header(out, "webmanager_plugin_listener_calls_total", "各插件的监听器处理同步事件的次数", "counter");
+        for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+            sample(out, "webmanager_plugin_listener_calls_total", "plugin=\"" + escape(entry.getKey()) + "\"",
+                    entry.getValue()[0]);
+        }
+        header(out, "webmanager_plugin_listener_seconds_total", "各插件的监听器处理同步事件的累计耗时", "counter");
+        for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+            sample(out, "webmanager_plugin_listener_seconds_total", "plugin=\"" + escape(entry.getKey()) + "\"",
+                    entry.getValue()[1] / 1e9);
+        }
+    }
+
+    private void writeLimits(Writer out) throws IOException {
+        RequestLimiter requestLimiter = server.getRequestLimiter();
+        gauge(out, "webmanager_http_active_requests", "正在处理的HTTP请求数", requestLimiter.getActiveCount());
+        gauge(out, "webmanager_http_queued_requests", "正在排队的HTTP请求数", requestLimiter.getQueuedCount());
+        header(out, "webmanager_http_busy_rejected_total", "因服务器繁忙返回503的请求数", "counter");
+        sample(out, "webmanager_http_busy_rejected_total", null, requestLimiter.getRejectedCount());
+
+        RateLimitFilter rateLimiter = server.getRateLimiter();
+        header(out, "webmanager_rate_limited_total", "超出频率限制返回429的请求数", "counter");
+        sample(out, "webmanager_rate_limited_total", "budget=\"request\"", rateLimiter.getLimitedCount());
+        sample(out, "webmanager_rate_limited_total", "budget=\"command\"", rateLimiter.getCommandLimitedCount());
+        sample(out, "webmanager_rate_limited_total", "budget=\"auth_failure\"", rateLimiter.getBlockedCount());
+        header(out, "webmanager_auth_rejected_total", "IP未授权返回403的请求数", "counter");
+        sample(out, "webmanager_auth_rejected_total", null, rateLimiter.getAuthFailureCount());
+        header(out, "webmanager_operation_log_dropped_total", "写入队列满而丢弃的操作日志条数", "counter");
+        sample(out, "webmanager_operation_log_dropped_total", null, plugin.getOperationLogger().getDroppedCount());
+        gauge(out, "webmanager_rate_limit_tracked_clients", "频率限制记录的客户端数量", rateLimiter.getTrackedCount());
+    }
+
+    private static void gauge(Writer out, String name, String help, double value) throws IOException {
+        header(out, name, help, "gauge");
+        sample(out, name, null, value);
+    }
+
+    private static void header(Writer out, String name, String help, String type) throws IOException {
+        out.write("# HELP ");
+        out.write(name);
+        out.write(' ');
+        out.write(help);
+        out.write("\n# TYPE ");
+        out.write(name);
+        out.write(' ');
+        out.write(type);
+        out.write('\n');
+    }
+
+    private static void histogram(Writer out, String name, String labels, HttpMetrics.Histogram histogram)
+            throws IOException {
+        String prefix = labels == null ? "" : labels + ",";
+        double[] bounds = histogram.getBounds();
+        long[] counts = histogram.getCumulativeCounts();
+        for (int i = 0; i < bounds.length; i++) {
+            sample(out, name + "_bucket", prefix + "le=\"" + bounds[i] + "\"", counts[i]);
+        }
+        sample(out, name + "_bucket", prefix + "le=\"+Inf\"", counts[bounds.length]);
+        sample(out, name + "_sum", labels, histogram.getSumSeconds());
+        sample(out, name + "_count", labels, counts[bounds.length]);
+    }
+
+    private static void sample(Writer out, String name, String labels, double value) throws IOException {
+        out.write(name);
+        if (labels != null) {
+            out.write('{');
+            out.write(labels);
+            out.write('}');
+        }
+        out.write(' ');
+        if (Double.isNaN(value)) {
+            out.write("NaN");
+        } else if (Double.isInfinite(value)) {
+            out.write(value > 0 ? "+Inf" : "-Inf");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            // 整数不输出小数点
+            out.write(Long.toString((long) value));
+        } else {
+            out.write(Double.toString(value));
+        }
+        out.write('\n');
+    }
+
+    // 转义标签值中的反斜杠、引号和换行
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
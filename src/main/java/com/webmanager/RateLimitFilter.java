@@ -0,0 +1,256 @@
+package com.webmanager;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按客户端IP限制请求频率
+ * 每个IP有三个令牌桶：所有请求共用的普通额度，命令单独的更严格的额度，
+ * 以及授权失败（403）的额度，授权失败次数用完后该IP的所有请求在恢复前都直接返回429，
+ * 不再执行授权检查和处理器。超出额度的请求返回429，并通过Retry-After告诉客户端多久后重试。
+ * 批量命令按命令条数扣除命令额度，由处理器在解析出命令后调用acquireCommands，额度必须够整批命令使用，
+ * 一批命令的条数不能超过命令的突发额度。
+ *
+ * IP由TrustedProxies确定：连接不是来自受信任的代理时就是连接的地址，客户端修改X-Forwarded-For
+ * 不能换到新的令牌桶。
+ */
+public class RateLimitFilter extends Filter {
+
+    // 清理空闲令牌桶的间隔
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+    // 记录的IP数量超过这个值时立即清理
+    private static final int MAX_TRACKED = 100_000;
+
+    private final TrustedProxies trustedProxies;
+    private final Budget requestBudget;
+    private final Budget commandBudget;
+    private final Budget failureBudget;
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+    private final AtomicLong allowedCount = new AtomicLong();
+    private final AtomicLong limitedCount = new AtomicLong();
+    private final AtomicLong commandLimitedCount = new AtomicLong();
+    private final AtomicLong blockedCount = new AtomicLong();
+    private final AtomicLong authFailureCount = new AtomicLong();
+
+    /**
+     * @param trustedProxies 受信任的反向代理
+     * @param requestsPerSecond 每个IP每秒可以发送的请求数
+     * @param requestBurst 每个IP可以连续发送的请求数
+     * @param commandsPerSecond 每个IP每秒可以执行的命令数
+     * @param commandBurst 每个IP可以连续执行的命令数
+     * @param failuresPerSecond 每个IP每秒恢复的授权失败次数
+     * @param failureBurst 每个IP可以连续授权失败的次数
+     */
+    public RateLimitFilter(TrustedProxies trustedProxies, double requestsPerSecond, int requestBurst,
+                           double commandsPerSecond, int commandBurst, double failuresPerSecond, int failureBurst) {
+        this.trustedProxies = trustedProxies;
+        this.requestBudget = new Budget(requestsPerSecond, requestBurst);
+        this.commandBudget = new Budget(commandsPerSecond, commandBurst);
+        this.failureBudget = new Budget(failuresPerSecond, failureBurst);
+    }
+
+    public RateLimitFilter(TrustedProxies trustedProxies) {
+        this(trustedProxies, 20, 40, 1, 5, 1.0 / 30, 10); // 默认每秒20个请求，每秒1条命令，授权失败10次后每30秒恢复一次
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        long now = System.nanoTime();
+        sweepIfNeeded(now);
+        ByteBuffer key = keyOf(exchange);
+
+        // 授权失败次数已经用完，不再执行授权检查
+        long wait = failureBudget.peek(key, now);
+        if (wait > 0) {
+            blockedCount.incrementAndGet();
+            reject(exchange, wait);
+            return;
+        }
+        wait = requestBudget.acquire(key, now, 1);
+        if (wait > 0) {
+            limitedCount.incrementAndGet();
+            reject(exchange, wait);
+            return;
+        }
+        if ("/api/command".equals(exchange.getHttpContext().getPath())) {
+            // 批量命令在这里只检查是否还有额度，避免额度用完时还读取请求体，按条数扣除由处理器完成
+            wait = "/api/command".equals(exchange.getRequestURI().getRawPath())
+                    ? commandBudget.acquire(key, now, 1)
+                    : commandBudget.peek(key, now);
+            if (wait > 0) {
+                commandLimitedCount.incrementAndGet();
+                reject(exchange, wait);
+                return;
+            }
+        }
+        allowedCount.incrementAndGet();
+
+        chain.doFilter(exchange);
+
+        // 处理器拒绝了该IP，扣除一次授权失败额度
+        if (exchange.getResponseCode() == 403) {
+            authFailureCount.incrementAndGet();
+            failureBudget.acquire(key, System.nanoTime(), 1);
+        }
+    }
+
+    @Override
+    public String description() {
+        return "按IP限制请求频率";
+    }
+
+    /**
+     * 按条数扣除命令额度，剩余的令牌不够整批命令使用时返回429，一个令牌也不扣除
+     * 条数超过突发额度的批量命令永远不会有足够的令牌，直接返回413
+     * @param exchange 请求
+     * @param count 命令条数
+     * @return 是否放行，返回false时已经发送了响应
+     */
+    public boolean acquireCommands(HttpExchange exchange, int count) throws IOException {
+        if (count > commandBudget.getBurst()) {
+            commandLimitedCount.incrementAndGet();
+            byte[] response = ("一次最多执行" + commandBudget.getBurst() + "条命令").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(413, response.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(response);
+            }
+            return false;
+        }
+        long wait = commandBudget.acquire(keyOf(exchange), System.nanoTime(), count);
+        if (wait > 0) {
+            commandLimitedCount.incrementAndGet();
+            reject(exchange, wait);
+            return false;
+        }
+        return true;
+    }
+
+    // 使用与授权检查相同的客户端地址，连接不是来自受信任的代理时就是连接的地址
+    private ByteBuffer keyOf(HttpExchange exchange) {
+        return ByteBuffer.wrap(trustedProxies.getClientAddress(exchange));
+    }
+
+    // 定期移除已经恢复满额的令牌桶，它们与新建的令牌桶没有区别
+    private void sweepIfNeeded(long now) {
+        long last = lastSweep.get();
+        boolean tooMany = requestBudget.size() + failureBudget.size() > MAX_TRACKED;
+        if ((now - last >= SWEEP_INTERVAL_NANOS || tooMany) && lastSweep.compareAndSet(last, now)) {
+            requestBudget.sweep(now);
+            commandBudget.sweep(now);
+            failureBudget.sweep(now);
+        }
+    }
+
+    // 返回429，Retry-After按秒向上取整
+    private static void reject(HttpExchange exchange, long waitNanos) throws IOException {
+        byte[] response = "请求过于频繁，请稍后重试".getBytes(StandardCharsets.UTF_8);
+        long seconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        exchange.getResponseHeaders().set("Retry-After", String.valueOf(seconds));
+        exchange.sendResponseHeaders(429, response.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(response);
+        }
+    }
+
+    // 获取放行的请求数
+    public long getAllowedCount() {
+        return allowedCount.get();
+    }
+
+    // 获取超出普通额度被拒绝的请求数
+    public long getLimitedCount() {
+        return limitedCount.get();
+    }
+
+    // 获取超出命令额度或单批条数上限被拒绝的请求数
+    public long getCommandLimitedCount() {
+        return commandLimitedCount.get();
+    }
+
+    // 获取因授权失败次数过多被拒绝的请求数
+    public long getBlockedCount() {
+        return blockedCount.get();
+    }
+
+    // 获取授权失败的请求数
+    public long getAuthFailureCount() {
+        return authFailureCount.get();
+    }
+
+    // 获取当前记录的IP数量
+    public int getTrackedCount() {
+        return requestBudget.size();
+    }
+
+    /**
+     * 一种额度下所有IP的令牌桶
+     * 每个令牌桶只保存一个AtomicLong：下一个令牌恢复满额的理论时刻（GCRA算法），
+     * 扣除令牌就是用CAS把这个时刻向后推一个间隔，不需要加锁，也不需要后台线程补充令牌。
+     * 不同IP分布在ConcurrentHashMap的不同槽位中，互不竞争。
+     */
+    private static final class Budget {
+        private final ConcurrentHashMap<ByteBuffer, AtomicLong> buckets = new ConcurrentHashMap<>();
+        // 每个令牌的恢复间隔
+        private final long intervalNanos;
+        // 可以连续使用的令牌数
+        private final int burst;
+        // 理论时刻最多可以领先当前时间多少，即可以连续使用的令牌数乘以间隔
+        private final long toleranceNanos;
+
+        Budget(double perSecond, int burst) {
+            this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / perSecond));
+            this.burst = Math.max(1, burst);
+            this.toleranceNanos = intervalNanos * this.burst;
+        }
+
+        int getBurst() {
+            return burst;
+        }
+
+        /**
+         * 扣除count个令牌，剩余的令牌足够时成功并返回0，否则不扣除并返回需要等待的纳秒数
+         * 理论时刻最多领先当前时间toleranceNanos，不会欠额，count超过burst时永远不会成功
+         */
+        long acquire(ByteBuffer key, long now, int count) {
+            AtomicLong bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+            while (true) {
+                long theoretical = bucket.get();
+                long start = Math.max(theoretical, now);
+                long end = start + intervalNanos * count;
+                long wait = end - now - toleranceNanos;
+                if (wait > 0) {
+                    return wait;
+                }
+                if (bucket.compareAndSet(theoretical, end)) {
+                    return 0;
+                }
+            }
+        }
+
+        // 检查是否还有令牌但不扣除，有令牌返回0，否则返回需要等待的纳秒数
+        long peek(ByteBuffer key, long now) {
+            AtomicLong bucket = buckets.get(key);
+            if (bucket == null) {
+                return 0;
+            }
+            return Math.max(0, Math.max(bucket.get(), now) + intervalNanos - now - toleranceNanos);
+        }
+
+        // 移除已经恢复满额的令牌桶，与正在扣除的请求同时发生时最多多放行一个请求
+        void sweep(long now) {
+            buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+        }
+
+        int size() {
+            return buckets.size();
+        }
+    }
+}
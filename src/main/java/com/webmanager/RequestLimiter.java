@@ -0,0 +1,97 @@
+package com.webmanager;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP请求并发限制
+ * 同时处理的请求数不超过maxConcurrent，超出的请求最多maxQueued个排队等待，
+ * 等待超时或者队列已满时直接返回503，并通过Retry-After告诉客户端稍后重试。
+ */
+public class RequestLimiter extends Filter {
+
+    private final Semaphore permits;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long queueTimeoutMillis;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public RequestLimiter(int maxConcurrent, int maxQueued, long queueTimeoutMillis) {
+        this.permits = new Semaphore(maxConcurrent);
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        if (!acquire()) {
+            rejectedCount.incrementAndGet();
+            reject(exchange);
+            return;
+        }
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public String description() {
+        return "限制同时处理的HTTP请求数";
+    }
+
+    // 获取处理许可，没有空闲许可时排队等待
+    private boolean acquire() {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            return false;
+        }
+        try {
+            return permits.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    // 返回503，让客户端稍后重试
+    private static void reject(HttpExchange exchange) throws IOException {
+        byte[] response = "服务器繁忙，请稍后重试".getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        exchange.sendResponseHeaders(503, response.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(response);
+        }
+    }
+
+    // 获取正在处理的请求数
+    public int getActiveCount() {
+        return Math.max(0, maxConcurrent - permits.availablePermits());
+    }
+
+    // 获取正在排队的请求数
+    public int getQueuedCount() {
+        return queued.get();
+    }
+
+    // 获取因繁忙被拒绝的请求数
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+}
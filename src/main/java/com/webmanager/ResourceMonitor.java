@@ -6,18 +6,20 @@ import java.io.File;
 
 public class ResourceMonitor {
 
+    private final WebManager plugin;
     private OperatingSystemMXBean osBean;
     private long lastCpuTime;
     private long lastUpTime;
 
-    public ResourceMonitor() {
+    public ResourceMonitor(WebManager plugin) {
+        this.plugin = plugin;
         osBean = ManagementFactory.getOperatingSystemMXBean();
         lastCpuTime = getProcessCpuTime();
         lastUpTime = ManagementFactory.getRuntimeMXBean().getUptime();
     }
 
-    // 获取进程CPU使用率
-    public double getCpuUsage() {
+    // 获取进程CPU使用率，计算区间为上一次调用到现在，只由MetricsHistory每秒调用一次，其他地方读取MetricsHistory.getLatest
+    public synchronized double getCpuUsage() {
         long currentCpuTime = getProcessCpuTime();
         long currentUpTime = ManagementFactory.getRuntimeMXBean().getUptime();
         
@@ -36,6 +38,11 @@ public class ResourceMonitor {
         return Math.round(cpuUsage * 10) / 10.0;
     }
 
+    // 获取进程累计使用的CPU时间（秒），不影响getCpuUsage的计算区间
+    public double getProcessCpuSeconds() {
+        return getProcessCpuTime() / 1e9;
+    }
+
     // 获取系统CPU使用率（如果支持）
     public double getSystemCpuUsage() {
         try {
@@ -59,6 +66,21 @@ public class ResourceMonitor {
         return Math.round(usage * 10) / 10.0;
     }
 
+    // 获取上一次GC后的堆内存使用率，反映存活对象占用的内存，还没有发生过GC时返回-1
+    public double getHeapUsageAfterGc() {
+        return plugin.getMemoryMonitor().getHeapUsageAfterGc();
+    }
+
+    // 获取所有线程的堆内存分配速率（字节/秒）
+    public double getAllocationRate() {
+        return plugin.getMemoryMonitor().getAllocationRate();
+    }
+
+    // 获取主线程的堆内存分配速率（字节/秒）
+    public double getMainThreadAllocationRate() {
+        return plugin.getMemoryMonitor().getMainThreadAllocationRate();
+    }
+
     // 获取系统内存使用率（如果支持）
     public double getSystemMemoryUsage() {
         try {
@@ -85,83 +107,39 @@ public class ResourceMonitor {
         return Math.round(usage * 10) / 10.0;
     }
 
-    // 获取TPS (Ticks Per Second) - 暂时返回固定值，实际项目中可以使用更复杂的实现
+    // 获取最近5秒的TPS (Ticks Per Second)
     public double getTPS() {
-        // 注意：在实际项目中，应该使用更准确的TPS计算方法
-        // 这里为了简单起见，暂时返回一个估计值
-        return 20.0;
+        return getTPS(5);
+    }
+
+    // 获取指定时间窗口内的滚动TPS
+    public double getTPS(int seconds) {
+        return plugin.getTickMonitor().getTps(seconds);
+    }
+
+    // 获取指定时间窗口内的tick耗时统计
+    public TickMonitor.TickStats getTickStats(int seconds) {
+        return plugin.getTickMonitor().getStats(seconds);
     }
 
     // 获取实体数量
     public int getEntityCount() {
-        try {
-            final java.util.concurrent.atomic.AtomicInteger entityCount = new java.util.concurrent.atomic.AtomicInteger(0);
-            org.bukkit.Bukkit.getScheduler().callSyncMethod(org.bukkit.Bukkit.getPluginManager().getPlugins()[0], new java.util.concurrent.Callable<Void>() {
-                @Override
-                public Void call() throws Exception {
-                    for (org.bukkit.World world : org.bukkit.Bukkit.getServer().getWorlds()) {
-                        entityCount.addAndGet(world.getEntities().size());
-                    }
-                    return null;
-                }
-            }).get();
-            return entityCount.get();
-        } catch (Exception e) {
-            return 0;
-        }
+        return plugin.getSnapshotPublisher().getSnapshot().getEntityCount();
     }
 
     // 获取在线玩家数量
     public int getOnlinePlayerCount() {
-        try {
-            final java.util.concurrent.atomic.AtomicInteger playerCount = new java.util.concurrent.atomic.AtomicInteger(0);
-            org.bukkit.Bukkit.getScheduler().callSyncMethod(org.bukkit.Bukkit.getPluginManager().getPlugins()[0], new java.util.concurrent.Callable<Void>() {
-                @Override
-                public Void call() throws Exception {
-                    playerCount.set(org.bukkit.Bukkit.getServer().getOnlinePlayers().size());
-                    return null;
-                }
-            }).get();
-            return playerCount.get();
-        } catch (Exception e) {
-            return 0;
-        }
+        return plugin.getSnapshotPublisher().getSnapshot().getOnlinePlayers();
     }
 
     // 获取最大玩家数量
     public int getMaxPlayerCount() {
-        try {
-            final java.util.concurrent.atomic.AtomicInteger maxPlayers = new java.util.concurrent.atomic.AtomicInteger(0);
-            org.bukkit.Bukkit.getScheduler().callSyncMethod(org.bukkit.Bukkit.getPluginManager().getPlugins()[0], new java.util.concurrent.Callable<Void>() {
-                @Override
-                public Void call() throws Exception {
-                    maxPlayers.set(org.bukkit.Bukkit.getServer().getMaxPlayers());
-                    return null;
-                }
-            }).get();
-            return maxPlayers.get();
-        } catch (Exception e) {
-            return 0;
-        }
+        return plugin.getSnapshotPublisher().getSnapshot().getMaxPlayers();
     }
 
     // 获取加载的区块数量
     public int getLoadedChunksCount() {
-        try {
-            final java.util.concurrent.atomic.AtomicInteger chunksCount = new java.util.concurrent.atomic.AtomicInteger(0);
-            org.bukkit.Bukkit.getScheduler().callSyncMethod(org.bukkit.Bukkit.getPluginManager().getPlugins()[0], new java.util.concurrent.Callable<Void>() {
-                @Override
-                public Void call() throws Exception {
-                    for (org.bukkit.World world : org.bukkit.Bukkit.getServer().getWorlds()) {
-                        chunksCount.addAndGet(world.getLoadedChunks().length);
-                    }
-                    return null;
-                }
-            }).get();
-            return chunksCount.get();
-        } catch (Exception e) {
-            return 0;
-        }
+        return plugin.getSnapshotPublisher().getSnapshot().getLoadedChunks();
     }
 
     private long getProcessCpuTime() {
@@ -0,0 +1,116 @@
+package com.webmanager;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 自动选择响应长度方式和压缩的输出流
+ * 内容先写入缓冲区，关闭时如果全部内容都在缓冲区中，就按固定长度发送（Content-Length）；
+ * 缓冲区写满时才发送响应头并改用分块传输，较大的响应不需要全部放在内存中。
+ * 客户端接受gzip并且内容不小于COMPRESS_THRESHOLD时使用gzip压缩。
+ */
+public class ResponseOutputStream extends OutputStream {
+
+    // 小于这个长度的响应不压缩
+    static final int COMPRESS_THRESHOLD = 1024;
+
+    private final HttpExchange exchange;
+    private final int status;
+    private final byte[] buffer;
+    private final boolean gzipAccepted;
+    private int position;
+    private OutputStream body;
+    private boolean closed;
+
+    public ResponseOutputStream(HttpExchange exchange, int status, int bufferSize) {
+        this.exchange = exchange;
+        this.status = status;
+        this.buffer = new byte[bufferSize];
+        this.gzipAccepted = StaticAsset.acceptsEncoding(exchange.getRequestHeaders().getFirst("Accept-Encoding"), "gzip");
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+    }
+
+    public ResponseOutputStream(HttpExchange exchange, int status) {
+        this(exchange, status, 16 * 1024); // 默认16KB以内的响应使用固定长度
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        if (length > buffer.length - position) {
+            flushBuffer();
+            if (length >= buffer.length) {
+                // 比缓冲区还大的内容直接写入
+                body.write(data, offset, length);
+                return;
+            }
+        }
+        System.arraycopy(data, offset, buffer, position, length);
+        position += length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (body == null) {
+            sendBuffered();
+            return;
+        }
+        try {
+            body.write(buffer, 0, position);
+            position = 0;
+        } finally {
+            body.close();
+        }
+    }
+
+    // 全部内容都在缓冲区中，使用固定长度，-1表示没有响应体
+    private void sendBuffered() throws IOException {
+        byte[] data = buffer;
+        int length = position;
+        if (gzipAccepted && length >= COMPRESS_THRESHOLD) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 3 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(buffer, 0, length);
+            }
+            if (compressed.size() < length) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                data = compressed.toByteArray();
+                length = data.length;
+            }
+        }
+        exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(data, 0, length);
+        }
+    }
+
+    // 缓冲区已满，发送响应头并改用分块传输
+    private void flushBuffer() throws IOException {
+        if (body == null) {
+            if (gzipAccepted) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(status, 0);
+            body = gzipAccepted ? new GZIPOutputStream(exchange.getResponseBody(), 8192) : exchange.getResponseBody();
+        }
+        if (position > 0) {
+            body.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
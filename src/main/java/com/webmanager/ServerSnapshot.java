@@ -0,0 +1,143 @@
+package com.webmanager;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 服务器状态快照
+ * 由主线程定时采集，创建后不可变，HTTP线程可以直接读取而无需同步调用主线程
+ * 在线玩家的详细信息由PlayerIndex根据事件维护，这里只记录在线人数
+ */
+public final class ServerSnapshot {
+
+    // 插件刚启动、还没有完成第一次采集时使用的空快照
+    public static final ServerSnapshot EMPTY = new ServerSnapshot(0, 0, 0, 0, "", 0, 0,
+            Collections.emptyList());
+
+    private final long sequence;
+    private final long capturedAt;
+    private final int onlinePlayers;
+    private final int maxPlayers;
+    private final String version;
+    private final int entityCount;
+    private final int loadedChunks;
+    private final List<WorldInfo> worlds;
+
+    private ServerSnapshot(long sequence, long capturedAt, int onlinePlayers, int maxPlayers, String version,
+                           int entityCount, int loadedChunks, List<WorldInfo> worlds) {
+        this.sequence = sequence;
+        this.capturedAt = capturedAt;
+        this.onlinePlayers = onlinePlayers;
+        this.maxPlayers = maxPlayers;
+        this.version = version;
+        this.entityCount = entityCount;
+        this.loadedChunks = loadedChunks;
+        this.worlds = worlds;
+    }
+
+    /**
+     * 采集当前服务器状态，必须在主线程中调用
+     * @param sequence 快照序号
+     * @param census 最近一轮实体统计，实体数量从中读取，不再获取整个世界的实体列表
+     * @return 新的快照
+     */
+    public static ServerSnapshot capture(long sequence, EntityCensus.Result census) {
+        List<WorldInfo> worlds = new ArrayList<>();
+        int entityCount = 0;
+        int loadedChunks = 0;
+        for (World world : Bukkit.getWorlds()) {
+            EntityCensus.WorldCensus worldCensus = census.getWorld(world.getName());
+            WorldInfo info = new WorldInfo(world.getName(), world.getEnvironment().name(), world.getSeed(),
+                    world.getPlayers().size(), worldCensus != null ? worldCensus.getEntities() : 0,
+                    world.getLoadedChunks().length);
+            entityCount += info.getEntities();
+            loadedChunks += info.getChunks();
+            worlds.add(info);
+        }
+
+        return new ServerSnapshot(sequence, System.currentTimeMillis(), Bukkit.getOnlinePlayers().size(),
+                Bukkit.getMaxPlayers(), Bukkit.getVersion(), entityCount, loadedChunks,
+                Collections.unmodifiableList(worlds));
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getCapturedAt() {
+        return capturedAt;
+    }
+
+    public int getOnlinePlayers() {
+        return onlinePlayers;
+    }
+
+    public int getMaxPlayers() {
+        return maxPlayers;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public int getEntityCount() {
+        return entityCount;
+    }
+
+    public int getLoadedChunks() {
+        return loadedChunks;
+    }
+
+    public List<WorldInfo> getWorlds() {
+        return worlds;
+    }
+
+    /**
+     * 单个世界的统计信息
+     */
+    public static final class WorldInfo {
+        private final String name;
+        private final String type;
+        private final long seed;
+        private final int players;
+        private final int entities;
+        private final int chunks;
+
+        public WorldInfo(String name, String type, long seed, int players, int entities, int chunks) {
+            this.name = name;
+            this.type = type;
+            this.seed = seed;
+            this.players = players;
+            this.entities = entities;
+            this.chunks = chunks;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public int getPlayers() {
+            return players;
+        }
+
+        public int getEntities() {
+            return entities;
+        }
+
+        public int getChunks() {
+            return chunks;
+        }
+    }
+}
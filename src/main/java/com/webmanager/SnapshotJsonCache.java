@@ -0,0 +1,71 @@
+package com.webmanager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.function.LongSupplier;
+
+/**
+ * 按快照缓存的JSON响应
+ * 同一个快照的JSON只序列化一次，所有请求和事件流共用，并带有内容摘要作为ETag。
+ * 快照由版本号标识，版本号必须来自JSON实际读取的那个快照，例如SnapshotPublisher的序号或PlayerIndex的revision。
+ * 版本号变化后重新序列化，内容与上一次相同时继续使用原来的StaticAsset，
+ * 不重新计算摘要和压缩，浏览器缓存的ETag也保持有效。
+ */
+public class SnapshotJsonCache {
+
+    private static final String CONTENT_TYPE = "application/json; charset=utf-8";
+
+    private final LongSupplier version;
+    private final JsonWriter.Content content;
+    private volatile Entry entry;
+
+    /**
+     * @param version 获取最新快照版本号的方法
+     * @param content 根据最新快照写入JSON的方法
+     */
+    public SnapshotJsonCache(LongSupplier version, JsonWriter.Content content) {
+        this.version = version;
+        this.content = content;
+    }
+
+    /**
+     * @param publisher 快照发布器，按它的序号缓存
+     * @param content 根据最新快照写入JSON的方法
+     */
+    public SnapshotJsonCache(SnapshotPublisher publisher, JsonWriter.Content content) {
+        this(() -> publisher.getSnapshot().getSequence(), content);
+    }
+
+    /**
+     * 获取最新快照对应的JSON
+     * @return JSON资源
+     */
+    public StaticAsset get() throws IOException {
+        // 先读取版本号再序列化，序列化时读到更新的快照也只会在下次请求时多序列化一次，不会返回过期内容
+        long sequence = version.getAsLong();
+        Entry current = entry;
+        if (current != null && current.sequence == sequence) {
+            return current.asset;
+        }
+        // 多个请求同时发现快照更新时可能各自序列化一次，结果相同，不需要加锁
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(current != null ? current.asset.getLength() + 64 : 1024);
+        try (JsonWriter json = new JsonWriter(bytes)) {
+            content.write(json);
+        }
+        byte[] data = bytes.toByteArray();
+        StaticAsset asset = current != null && current.asset.hasContent(data)
+                ? current.asset : StaticAsset.of(data, CONTENT_TYPE);
+        entry = new Entry(sequence, asset);
+        return asset;
+    }
+
+    private static final class Entry {
+        private final long sequence;
+        private final StaticAsset asset;
+
+        Entry(long sequence, StaticAsset asset) {
+            this.sequence = sequence;
+            this.asset = asset;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.webmanager;
+
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * 快照发布器
+ * 在主线程中每隔固定tick采集一次ServerSnapshot，通过volatile引用发布给HTTP线程读取
+ */
+public class SnapshotPublisher implements Runnable {
+
+    private final WebManager plugin;
+    private final long periodTicks;
+    private volatile ServerSnapshot snapshot = ServerSnapshot.EMPTY;
+    private long sequence;
+    private BukkitTask task;
+
+    public SnapshotPublisher(WebManager plugin, long periodTicks) {
+        this.plugin = plugin;
+        this.periodTicks = periodTicks;
+    }
+
+    public SnapshotPublisher(WebManager plugin) {
+        this(plugin, 20); // 默认每秒采集一次
+    }
+
+    // 启动定时采集任务
+    public void start() {
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this, 0L, periodTicks);
+    }
+
+    // 停止定时采集任务
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            snapshot = ServerSnapshot.capture(++sequence, plugin.getEntityCensus().getResult());
+        } catch (Exception e) {
+            plugin.getLogger().warning("采集服务器快照失败: " + e.getMessage());
+        }
+    }
+
+    // 获取最新发布的快照，任何线程都可以调用
+    public ServerSnapshot getSnapshot() {
+        return snapshot;
+    }
+}
@@ -0,0 +1,203 @@
+package com.webmanager;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 静态资源
+ * 创建时计算内容的强ETag并预先压缩为gzip和deflate格式，之后不再修改，
+ * 每次请求只根据Accept-Encoding选择一个字节数组发送，浏览器缓存有效时返回304。
+ * 管理页面和按快照缓存的JSON都通过它发送。
+ */
+public final class StaticAsset {
+
+    private final String contentType;
+    private final byte[] identity;
+    private final byte[] gzip;
+    private final byte[] deflate;
+    // 内容摘要，三种编码的ETag都由它加上编码名称组成
+    private final String digest;
+
+    private StaticAsset(String contentType, byte[] identity, byte[] gzip, byte[] deflate, String digest) {
+        this.contentType = contentType;
+        this.identity = identity;
+        this.gzip = gzip;
+        this.deflate = deflate;
+        this.digest = digest;
+    }
+
+    /**
+     * 创建静态资源
+     * @param content 原始内容，调用后不能再修改
+     * @param contentType Content-Type
+     * @return 静态资源
+     */
+    public static StaticAsset of(byte[] content, String contentType) {
+        // 太小的内容压缩后节省的流量不值得额外的开销
+        if (content.length < ResponseOutputStream.COMPRESS_THRESHOLD) {
+            return new StaticAsset(contentType, content, null, null, digest(content));
+        }
+        byte[] gzip = compress(content, true);
+        byte[] deflate = compress(content, false);
+        // 压缩后没有变小的内容不使用压缩
+        return new StaticAsset(contentType, content,
+                gzip.length < content.length ? gzip : null,
+                deflate.length < content.length ? deflate : null,
+                digest(content));
+    }
+
+    /**
+     * 发送资源，处理HEAD请求、压缩协商和If-None-Match
+     * @param exchange HTTP请求
+     */
+    public void send(HttpExchange exchange) throws IOException {
+        String encoding = chooseEncoding(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+        byte[] body = "gzip".equals(encoding) ? gzip : "deflate".equals(encoding) ? deflate : identity;
+        String etag = etag(encoding);
+
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", contentType);
+        // 浏览器可以缓存，但每次使用前都要用ETag确认，页面更新后立即生效
+        headers.set("Cache-Control", "no-cache");
+        headers.set("Vary", "Accept-Encoding");
+        headers.set("ETag", etag);
+
+        if (isNotModified(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        if (encoding != null) {
+            headers.set("Content-Encoding", encoding);
+        }
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            headers.set("Content-Length", String.valueOf(body.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    // 获取未压缩的内容长度
+    public int getLength() {
+        return identity.length;
+    }
+
+    // 获取未压缩内容的ETag
+    public String getEtag() {
+        return etag(null);
+    }
+
+    // 内容是否与给定的字节相同
+    public boolean hasContent(byte[] content) {
+        return Arrays.equals(identity, content);
+    }
+
+    // 把未压缩的内容写入输出流
+    public void writeTo(OutputStream output) throws IOException {
+        output.write(identity);
+    }
+
+    private String etag(String encoding) {
+        return encoding == null ? "\"" + digest + "\"" : "\"" + digest + "-" + encoding + "\"";
+    }
+
+    // 浏览器缓存的版本与当前内容相同，不论它是哪种编码
+    private boolean isNotModified(String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag(null)) || tag.equals(etag("gzip")) || tag.equals(etag("deflate"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 根据Accept-Encoding选择编码，优先gzip，返回null表示不压缩
+    private String chooseEncoding(String acceptEncoding) {
+        if (gzip != null && acceptsEncoding(acceptEncoding, "gzip")) {
+            return "gzip";
+        }
+        if (deflate != null && acceptsEncoding(acceptEncoding, "deflate")) {
+            return "deflate";
+        }
+        return null;
+    }
+
+    /**
+     * 检查Accept-Encoding是否接受某种编码，q=0表示不接受
+     * @param acceptEncoding 请求头的值，可以为null
+     * @param encoding 编码名称，gzip同时匹配x-gzip
+     * @return 是否接受
+     */
+    static boolean acceptsEncoding(String acceptEncoding, String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String part : acceptEncoding.split(",")) {
+            String[] fields = part.split(";");
+            String name = fields[0].trim().toLowerCase(Locale.ROOT);
+            if (!name.equals(encoding) && !(encoding.equals("gzip") && name.equals("x-gzip"))) {
+                continue;
+            }
+            for (int i = 1; i < fields.length; i++) {
+                String parameter = fields[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(parameter.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // 压缩内容，HTTP中的deflate编码是带zlib头的格式
+    private static byte[] compress(byte[] content, boolean gzip) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 3 + 64);
+        try (OutputStream out = gzip ? new GZIPOutputStream(bytes) : new DeflaterOutputStream(bytes)) {
+            out.write(content);
+        } catch (IOException e) {
+            // 写入内存不会失败
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // 内容的SHA-256摘要，取前16字节作为ETag
+    private static String digest(byte[] content) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(content);
+            return HexFormat.of().formatHex(hash, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
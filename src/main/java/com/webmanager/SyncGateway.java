@@ -0,0 +1,224 @@
+package com.webmanager;
+
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 主线程访问的统一入口
+ * HTTP线程需要在主线程执行的工作都提交到同一个队列，由一个每tick执行的任务按时间预算统一处理：
+ * 每个tick至少处理一步，之后超过预算的工作留到下一个tick，面板的请求再多也不会让某个tick明显变长。
+ * 带键的读取在执行前如果已经有相同键的任务在排队，直接共用它的结果，不再重复执行（single-flight）。
+ * 分步执行的工作（例如批量命令）每次只执行一步，没有完成时放回队尾，多个批次轮流执行。
+ */
+public class SyncGateway implements Runnable {
+
+    private final WebManager plugin;
+    private final long budgetNanos;
+    private final ConcurrentLinkedQueue<Job<?>> queue = new ConcurrentLinkedQueue<>();
+    private final Map<String, Job<?>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    // 以下统计只在主线程写入
+    private volatile long lastTickNanos;
+    private volatile long totalNanos;
+    private volatile long stepCount;
+    private volatile long deferredTicks;
+    private BukkitTask task;
+    private volatile boolean stopped;
+
+    public SyncGateway(WebManager plugin, long budgetMillis) {
+        this.plugin = plugin;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+
+    public SyncGateway(WebManager plugin) {
+        this(plugin, 5); // 默认每个tick最多用5毫秒处理面板的主线程工作
+    }
+
+    // 启动每tick执行的处理任务
+    public void start() {
+        stopped = false;
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this, 1L, 1L);
+    }
+
+    // 停止处理任务，还在排队的工作全部取消
+    public void stop() {
+        stopped = true;
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        Job<?> job;
+        while ((job = queue.poll()) != null) {
+            queued.decrementAndGet();
+            job.future.cancel(false);
+            if (job.key != null) {
+                inFlight.remove(job.key, job);
+            }
+        }
+    }
+
+    /**
+     * 提交一个带键的读取任务，相同键的任务还没有执行时共用同一个结果
+     * @param key 读取内容的键，相同的键必须返回相同的内容
+     * @param task 任务
+     * @return 任务结果，插件停止时被取消；同一个future由多个调用方共用，调用方不能取消它
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> submit(String key, Callable<T> task) {
+        while (true) {
+            Job<T> job = new Job<>(key, Step.of(task));
+            Job<?> existing = inFlight.putIfAbsent(key, job);
+            if (existing == null) {
+                return enqueue(job).future;
+            }
+            if (!existing.future.isDone()) {
+                coalescedCount.incrementAndGet();
+                return (CompletableFuture<T>) existing.future;
+            }
+            // 已经完成但还没有移除的任务，移除后重试
+            inFlight.remove(key, existing);
+        }
+    }
+
+    /**
+     * 提交分步执行的工作，每次调用step执行一步，直到返回完成
+     * @param step 工作
+     * @return 全部步骤完成时完成，插件停止时被取消
+     */
+    public CompletableFuture<Void> submitSteps(Step<Void> step) {
+        return enqueue(new Job<>(null, step)).future;
+    }
+
+    private <T> Job<T> enqueue(Job<T> job) {
+        submittedCount.incrementAndGet();
+        queued.incrementAndGet();
+        queue.add(job);
+        if (stopped && queue.remove(job)) {
+            // 停止后提交的工作不会再被执行
+            queued.decrementAndGet();
+            job.future.cancel(false);
+        }
+        return job;
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        long deadline = start + budgetNanos;
+        long steps = 0;
+        Job<?> job;
+        // 每个tick至少执行一步，保证主线程繁忙时也有进展
+        while ((steps == 0 || System.nanoTime() - deadline < 0) && (job = queue.poll()) != null) {
+            steps++;
+            if (!job.step()) {
+                // 没有完成的分步工作放回队尾，与其他工作轮流执行
+                queue.add(job);
+                continue;
+            }
+            queued.decrementAndGet();
+            if (job.key != null) {
+                inFlight.remove(job.key, job);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        lastTickNanos = elapsed;
+        if (steps > 0) {
+            totalNanos += elapsed;
+            stepCount += steps;
+            if (!queue.isEmpty()) {
+                deferredTicks++;
+            }
+        }
+    }
+
+    // 正在排队的工作数量
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    // 最近一个tick处理工作用的时间（纳秒）
+    public long getLastTickNanos() {
+        return lastTickNanos;
+    }
+
+    // 处理工作累计用的时间（纳秒）
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    // 累计执行的步数，普通任务一次执行算一步
+    public long getStepCount() {
+        return stepCount;
+    }
+
+    // 提交的工作数量，不包括共用结果的读取
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    // 共用了已有结果的读取次数
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    // 预算用完时还有工作没有处理的tick数
+    public long getDeferredTicks() {
+        return deferredTicks;
+    }
+
+    /**
+     * 分步执行的工作
+     */
+    @FunctionalInterface
+    public interface Step<T> {
+        /**
+         * 在主线程执行一步
+         * @param future 工作的结果，全部完成时由实现方完成
+         * @return 工作是否已经结束
+         */
+        boolean step(CompletableFuture<T> future) throws Exception;
+
+        // 把普通任务包装成只有一步的工作
+        static <T> Step<T> of(Callable<T> task) {
+            return future -> {
+                future.complete(task.call());
+                return true;
+            };
+        }
+    }
+
+    private static final class Job<T> {
+        private final String key;
+        private final Step<T> work;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Job(String key, Step<T> work) {
+            this.key = key;
+            this.work = work;
+        }
+
+        // 执行一步，出现异常或者已经被取消时结束
+        boolean step() {
+            if (future.isDone()) {
+                return true;
+            }
+            try {
+                return work.step(future) || future.isDone();
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+                return true;
+            }
+        }
+    }
+}
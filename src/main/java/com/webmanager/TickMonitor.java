@@ -0,0 +1,203 @@
+package com.webmanager;
+
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * tick计时器
+ * 每个tick在主线程中记录一次System.nanoTime的间隔，写入固定大小的long环形缓冲区，
+ * 由此计算滚动TPS以及tick间隔的分布。记录过程不分配任何对象。
+ *
+ * 注意：Spigot API没有tick结束的回调，无法测量tick本身的耗时（MSPT），这里统计的是相邻两个tick开始的间隔，
+ * 服务器不卡顿时约为50ms，不会低于50ms；超过50ms的部分就是tick本身超时的时间。
+ */
+public class TickMonitor implements Runnable {
+
+    // 超过该间隔的tick记为卡顿tick
+    private static final long LAG_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(60);
+
+    private final WebManager plugin;
+    private final long[] intervals;
+    private long lastTickNanos;
+    private volatile long recordedTicks;
+    private volatile long laggedTicks;
+    private BukkitTask task;
+
+    public TickMonitor(WebManager plugin, int capacity) {
+        this.plugin = plugin;
+        this.intervals = new long[capacity];
+    }
+
+    public TickMonitor(WebManager plugin) {
+        this(plugin, 6000); // 默认保留5分钟的tick数据
+    }
+
+    // 启动每tick执行的计时任务
+    public void start() {
+        lastTickNanos = 0;
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this, 1L, 1L);
+    }
+
+    // 停止计时任务
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        long now = System.nanoTime();
+        if (lastTickNanos != 0) {
+            long interval = now - lastTickNanos;
+            long count = recordedTicks;
+            intervals[(int) (count % intervals.length)] = interval;
+            if (interval > LAG_THRESHOLD_NANOS) {
+                laggedTicks++;
+            }
+            // volatile写入在数组写入之后，读线程看到新的计数时也能看到对应的数据
+            recordedTicks = count + 1;
+        }
+        lastTickNanos = now;
+    }
+
+    /**
+     * 获取最近一段时间的滚动TPS
+     * @param seconds 统计窗口（秒）
+     * @return TPS，最高为20
+     */
+    public double getTps(int seconds) {
+        long count = recordedTicks;
+        int available = (int) Math.min(count, intervals.length);
+        long windowNanos = TimeUnit.SECONDS.toNanos(seconds);
+        long total = 0;
+        int size = 0;
+        while (size < available && total < windowNanos) {
+            total += intervals[(int) ((count - 1 - size) % intervals.length)];
+            size++;
+        }
+        if (size == 0) {
+            return 20.0;
+        }
+        return round(Math.min(20.0, size * (double) TimeUnit.SECONDS.toNanos(1) / total), 100);
+    }
+
+    /**
+     * 统计最近一段时间的tick数据
+     * @param seconds 统计窗口（秒）
+     * @return 统计结果
+     */
+    public TickStats getStats(int seconds) {
+        long count = recordedTicks;
+        int available = (int) Math.min(count, intervals.length);
+        if (available == 0) {
+            return new TickStats(20.0, 0, 0, 0, 0, 0, 0, laggedTicks);
+        }
+
+        // 从最新的tick向前累加，直到覆盖整个统计窗口
+        long windowNanos = TimeUnit.SECONDS.toNanos(seconds);
+        long[] window = new long[available];
+        long total = 0;
+        int size = 0;
+        int lagged = 0;
+        while (size < available && total < windowNanos) {
+            long interval = intervals[(int) ((count - 1 - size) % intervals.length)];
+            window[size++] = interval;
+            total += interval;
+            if (interval > LAG_THRESHOLD_NANOS) {
+                lagged++;
+            }
+        }
+
+        double tps = Math.min(20.0, size * (double) TimeUnit.SECONDS.toNanos(1) / total);
+        Arrays.sort(window, 0, size);
+        return new TickStats(round(tps, 100),
+                toMillis(total / size),
+                toMillis(percentile(window, size, 0.50)),
+                toMillis(percentile(window, size, 0.95)),
+                toMillis(percentile(window, size, 0.99)),
+                toMillis(window[size - 1]),
+                lagged,
+                laggedTicks);
+    }
+
+    // 获取记录以来卡顿tick的总数
+    public long getLaggedTicks() {
+        return laggedTicks;
+    }
+
+    private static long percentile(long[] sorted, int size, double p) {
+        int index = (int) Math.ceil(p * size) - 1;
+        return sorted[Math.max(0, Math.min(size - 1, index))];
+    }
+
+    private static double toMillis(long nanos) {
+        return round(nanos / 1_000_000.0, 100);
+    }
+
+    private static double round(double value, int scale) {
+        return Math.round(value * scale) / (double) scale;
+    }
+
+    /**
+     * 一个统计窗口内的tick数据
+     */
+    public static final class TickStats {
+        private final double tps;
+        private final double meanInterval;
+        private final double p50Interval;
+        private final double p95Interval;
+        private final double p99Interval;
+        private final double maxInterval;
+        private final int laggedTicks;
+        private final long totalLaggedTicks;
+
+        public TickStats(double tps, double meanInterval, double p50Interval, double p95Interval, double p99Interval,
+                         double maxInterval, int laggedTicks, long totalLaggedTicks) {
+            this.tps = tps;
+            this.meanInterval = meanInterval;
+            this.p50Interval = p50Interval;
+            this.p95Interval = p95Interval;
+            this.p99Interval = p99Interval;
+            this.maxInterval = maxInterval;
+            this.laggedTicks = laggedTicks;
+            this.totalLaggedTicks = totalLaggedTicks;
+        }
+
+        public double getTps() {
+            return tps;
+        }
+
+        public double getMeanInterval() {
+            return meanInterval;
+        }
+
+        public double getP50Interval() {
+            return p50Interval;
+        }
+
+        public double getP95Interval() {
+            return p95Interval;
+        }
+
+        public double getP99Interval() {
+            return p99Interval;
+        }
+
+        public double getMaxInterval() {
+            return maxInterval;
+        }
+
+        public int getLaggedTicks() {
+            return laggedTicks;
+        }
+
+        public long getTotalLaggedTicks() {
+            return totalLaggedTicks;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.webmanager;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 受信任的反向代理
+ * 只有连接来自受信任的代理时才读取X-Forwarded-For，否则直接使用连接的地址，客户端自己填写的
+ * X-Forwarded-For不会影响授权检查和频率限制。代理会把它看到的地址追加到末尾，所以从右向左查找，
+ * 第一个不是受信任代理的地址就是客户端地址，更左边的内容可能是客户端伪造的，不使用。
+ */
+public class TrustedProxies {
+
+    private final List<IpAddresses.Cidr> networks;
+
+    /**
+     * @param networks 受信任的代理地址或网段，例如"127.0.0.1"、"10.0.0.0/8"
+     * @throws IllegalArgumentException 地址格式错误
+     */
+    public TrustedProxies(List<String> networks) {
+        List<IpAddresses.Cidr> parsed = new ArrayList<>(networks.size());
+        for (String network : networks) {
+            parsed.add(IpAddresses.parseCidr(network));
+        }
+        this.networks = parsed;
+    }
+
+    // 判断地址是否属于受信任的代理
+    public boolean isTrusted(byte[] address) {
+        for (IpAddresses.Cidr network : networks) {
+            if (network.contains(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 获取客户端地址，只解析字面量，不做DNS查询
+     * @param exchange 请求
+     * @return 4字节或16字节的地址
+     */
+    public byte[] getClientAddress(HttpExchange exchange) {
+        byte[] address = IpAddresses.unmap(exchange.getRemoteAddress().getAddress().getAddress());
+        if (!isTrusted(address)) {
+            return address;
+        }
+        List<String> headers = exchange.getRequestHeaders().get("X-Forwarded-For");
+        if (headers == null) {
+            return address;
+        }
+        // 多个X-Forwarded-For头按顺序拼接，从最后一个地址向前查找
+        for (int i = headers.size() - 1; i >= 0; i--) {
+            String[] hops = headers.get(i).split(",");
+            for (int j = hops.length - 1; j >= 0; j--) {
+                if (hops[j].isBlank()) {
+                    continue;
+                }
+                byte[] hop = IpAddresses.parse(hops[j]);
+                if (hop == null) {
+                    // 格式错误时无法继续向前追溯，使用最后一个可信的地址
+                    return address;
+                }
+                address = hop;
+                if (!isTrusted(address)) {
+                    return address;
+                }
+            }
+        }
+        return address;
+    }
+
+    // 获取客户端地址的文本形式，用于日志
+    public String getClientIp(HttpExchange exchange) {
+        try {
+            return InetAddress.getByAddress(getClientAddress(exchange)).getHostAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
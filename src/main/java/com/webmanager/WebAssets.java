@@ -0,0 +1,126 @@
+package com.webmanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * 管理界面的页面资源
+ * 启动时从插件jar中读取一次template.html并生成StaticAsset，之后每次请求都使用同一份内容。
+ * 插件数据目录下存在web目录时进入开发模式：优先使用web/template.html，
+ * 并监听该目录，文件修改后立即重新加载，不需要重启服务器；文件删除后恢复使用jar中的版本。
+ */
+public class WebAssets {
+
+    private static final String TEMPLATE = "template.html";
+    private static final String CONTENT_TYPE = "text/html; charset=utf-8";
+
+    private final WebManager plugin;
+    private final Path overrideDirectory;
+    private StaticAsset bundledTemplate;
+    private volatile StaticAsset template;
+    private WatchService watchService;
+
+    public WebAssets(WebManager plugin) {
+        this.plugin = plugin;
+        this.overrideDirectory = new File(plugin.getDataFolder(), "web").toPath();
+    }
+
+    // 加载页面，存在web目录时开始监听
+    public void start() {
+        bundledTemplate = loadBundled();
+        template = bundledTemplate;
+        if (!Files.isDirectory(overrideDirectory)) {
+            return;
+        }
+        reloadOverride();
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            overrideDirectory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            Thread.ofVirtual().name("WebManager-AssetWatcher").start(this::watch);
+            plugin.getLogger().info("页面开发模式已启用，监听目录: " + overrideDirectory);
+        } catch (IOException e) {
+            plugin.getLogger().warning("无法监听页面目录: " + e.getMessage());
+        }
+    }
+
+    // 停止监听
+    public void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // 忽略关闭时的错误
+            }
+        }
+    }
+
+    // 获取当前的页面
+    public StaticAsset getTemplate() {
+        return template;
+    }
+
+    // 读取jar中的页面，读取失败时使用错误提示页面
+    private StaticAsset loadBundled() {
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream(TEMPLATE)) {
+            if (is != null) {
+                return StaticAsset.of(is.readAllBytes(), CONTENT_TYPE);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().severe("读取模板文件失败: " + e.getMessage());
+        }
+        return StaticAsset.of("<html><body><h1>错误: 无法加载模板文件</h1></body></html>"
+                .getBytes(StandardCharsets.UTF_8), CONTENT_TYPE);
+    }
+
+    // 重新读取web目录中的页面，文件不存在时使用jar中的版本
+    private void reloadOverride() {
+        Path file = overrideDirectory.resolve(TEMPLATE);
+        if (!Files.isRegularFile(file)) {
+            template = bundledTemplate;
+            return;
+        }
+        try {
+            template = StaticAsset.of(Files.readAllBytes(file), CONTENT_TYPE);
+        } catch (IOException e) {
+            // 编辑器保存到一半时可能读取失败，保留上一个版本，保存完成后还会收到修改事件
+            plugin.getLogger().warning("读取页面文件失败: " + e.getMessage());
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || TEMPLATE.equals(String.valueOf(event.context()))) {
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    reloadOverride();
+                    plugin.getLogger().info("页面已重新加载");
+                }
+                if (!key.reset()) {
+                    // 目录被删除，恢复使用jar中的版本
+                    template = bundledTemplate;
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // 插件禁用
+        }
+    }
+}
@@ -1,101 +1,665 @@
 package com.webmanager;
 
+import com.sun.net.httpserver.Filter;
 import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
-import org.bukkit.Bukkit;
-import org.bukkit.entity.Player;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class WebHttpServer {
 
     private WebManager plugin;
     private HttpServer server;
+    private EventStreamHub streamHub;
+    private WebAssets assets;
+    // 玩家和世界列表按快照缓存序列化结果
+    private SnapshotJsonCache playersJson;
+    private SnapshotJsonCache worldsJson;
+    private ExecutorService executor;
+    private final HttpMetrics httpMetrics;
+    private final TrustedProxies trustedProxies;
+    private final RateLimitFilter rateLimiter;
+    private final RequestLimiter requestLimiter;
+    // 等待主线程执行结果的最长时间
+    private final long syncTimeoutMillis;
 
-    public WebHttpServer(WebManager plugin) {
+    /**
+     * @param plugin 插件
+     * @param maxConcurrent 同时处理的请求数
+     * @param maxQueued 最多排队的请求数
+     * @param queueTimeoutMillis 请求排队等待的最长时间，超过后返回503
+     * @param syncTimeoutMillis 等待主线程执行结果的最长时间
+     * @param trustedProxies 受信任的反向代理地址或网段，只有来自这些地址的X-Forwarded-For才会被使用
+     * @param commandsPerSecond 每个IP每秒可以执行的命令数
+     * @param commandBurst 每个IP可以连续执行的命令数，也是一批命令的条数上限
+     */
+    public WebHttpServer(WebManager plugin, int maxConcurrent, int maxQueued, long queueTimeoutMillis,
+                         long syncTimeoutMillis, java.util.List<String> trustedProxies,
+                         double commandsPerSecond, int commandBurst) {
         this.plugin = plugin;
+        this.httpMetrics = new HttpMetrics();
+        this.trustedProxies = new TrustedProxies(trustedProxies);
+        this.rateLimiter = new RateLimitFilter(this.trustedProxies, 20, 40, commandsPerSecond, commandBurst, 1.0 / 30, 10);
+        this.requestLimiter = new RequestLimiter(maxConcurrent, maxQueued, queueTimeoutMillis);
+        this.syncTimeoutMillis = syncTimeoutMillis;
+    }
+
+    public WebHttpServer(WebManager plugin) {
+        // 默认同时处理32个请求，最多128个排队2秒，主线程任务最多等待5秒，只信任本机上的反向代理，每秒1条命令
+        this(plugin, 32, 128, 2000, 5000, java.util.List.of("127.0.0.0/8", "::1"), 1, 5);
     }
 
     public void start(int port) {
         try {
+            // 页面在启动时加载一次
+            assets = new WebAssets(plugin);
+            assets.start();
+            // 玩家列表来自PlayerIndex，按它的revision缓存，玩家变化后立即生效，不用等下一次主线程快照
+            playersJson = new SnapshotJsonCache(() -> plugin.getPlayerIndex().getSnapshot().getRevision(),
+                    this::writePlayersJson);
+            worldsJson = new SnapshotJsonCache(plugin.getSnapshotPublisher(), this::writeWorldsJson);
             server = HttpServer.create(new InetSocketAddress(port), 0);
-            server.createContext("/", new HomeHandler());
-            server.createContext("/api/players", new PlayersHandler());
-            server.createContext("/api/resources", new ResourcesHandler());
-            server.createContext("/api/command", new CommandHandler());
-            server.createContext("/api/logs", new LogsHandler());
-            server.createContext("/api/operation-logs", new OperationLogsHandler());
-            server.createContext("/api/worlds", new WorldsHandler());
-            server.setExecutor(Executors.newCachedThreadPool());
+            createContext("/", new HomeHandler());
+            createContext("/api/players", new PlayersHandler());
+            createContext("/api/resources", new ResourcesHandler());
+            createContext("/api/command", new CommandHandler());
+            createContext("/api/logs", new LogsHandler());
+            createContext("/api/operation-logs", new OperationLogsHandler());
+            createContext("/api/worlds", new WorldsHandler());
+            createContext("/api/stream", new StreamHandler());
+            createContext("/api/profiler", new ProfilerHandler());
+            createContext("/api/plugins", new PluginsHandler());
+            createContext("/metrics", new MetricsHandler(new PrometheusExporter(plugin, this)));
+            // 每个请求使用一个虚拟线程，并发数量由RequestLimiter控制
+            executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("WebManager-HTTP-", 0).factory());
+            server.setExecutor(executor);
             server.start();
+            streamHub = new EventStreamHub(plugin, this);
+            streamHub.start();
         } catch (IOException e) {
             plugin.getLogger().severe("启动HTTP服务器失败: " + e.getMessage());
         }
     }
 
-    // 检查IP是否已授权
-    private boolean isIpAuthorized(String ip) {
-        // 清理过期的授权
-        plugin.getIpAuthManager().cleanupExpired();
-        // 检查IP是否在授权列表中
-        return plugin.getIpAuthManager().isAuthorized(ip);
+    // 注册处理器，所有请求先计入统计，再按IP限制频率，最后经过并发限制，超出频率的请求不会占用排队位置
+    private void createContext(String path, HttpHandler handler) {
+        java.util.List<Filter> filters = server.createContext(path, handler).getFilters();
+        filters.add(httpMetrics);
+        filters.add(rateLimiter);
+        filters.add(requestLimiter);
+    }
+
+    /**
+     * 等待提交给SyncGateway的任务的结果
+     * 带键的读取可能由多个请求共用同一个future，超时时不取消它，留给其他请求继续等待
+     * @param future 任务结果
+     * @return 结果，超过syncTimeoutMillis或者插件停止时返回null
+     */
+    <T> T awaitSync(CompletableFuture<T> future) {
+        long start = System.nanoTime();
+        boolean timedOut = true;
+        try {
+            T result = future.get(syncTimeoutMillis, TimeUnit.MILLISECONDS);
+            timedOut = false;
+            return result;
+        } catch (TimeoutException | CancellationException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            httpMetrics.recordSyncCall(System.nanoTime() - start, timedOut);
+        }
+    }
+
+    /**
+     * 在主线程执行一批命令并等待结果，主线程超过syncTimeoutMillis没有进展时取消还没有开始的命令
+     * @param commands 命令，不带开头的斜杠
+     * @param clientIp 客户端IP，用于记录操作日志
+     * @param capturePluginOutput 插件命令是否使用CapturingCommandSender执行，为false时都以控制台身份执行
+     * @return 每条命令的结果，包括超时和没有执行的命令
+     */
+    java.util.List<CommandBatch.Result> runCommands(java.util.List<String> commands, String clientIp,
+                                                    boolean capturePluginOutput) {
+        CommandBatch batch = new CommandBatch(plugin, commands, capturePluginOutput);
+        batch.start();
+        boolean finished = batch.await(syncTimeoutMillis);
+        httpMetrics.recordSyncCall(batch.getElapsedNanos(), !finished);
+        java.util.List<CommandBatch.Result> results = batch.getResults();
+        for (CommandBatch.Result result : results) {
+            String status = result.getStatus();
+            httpMetrics.recordCommand(status.equals(CommandBatch.SKIPPED) ? HttpMetrics.COMMAND_TIMEOUT : status);
+            // 记录操作日志
+            plugin.getOperationLogger().logOperation(clientIp, "命令执行", result.getError() == null
+                    ? result.getCommand() : result.getCommand() + " (失败: " + result.getError() + ")");
+        }
+        return results;
+    }
+
+    // 获取最新快照的玩家列表JSON
+    StaticAsset getPlayersJson() throws IOException {
+        return playersJson.get();
+    }
+
+    // 获取最新快照的世界列表JSON
+    StaticAsset getWorldsJson() throws IOException {
+        return worldsJson.get();
     }
 
-    // 获取客户端IP地址
+    // 获取HTTP请求统计
+    public HttpMetrics getHttpMetrics() {
+        return httpMetrics;
+    }
+
+    // 获取请求并发限制，用于查看繁忙程度
+    public RequestLimiter getRequestLimiter() {
+        return requestLimiter;
+    }
+
+    // 获取按IP的频率限制，用于查看拒绝次数
+    public RateLimitFilter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    // 检查IP是否已授权，直接使用地址字节在前缀树中查找
+    private boolean isIpAuthorized(HttpExchange exchange) {
+        byte[] address = trustedProxies.getClientAddress(exchange);
+        return address != null && plugin.getIpAuthManager().isAuthorized(address);
+    }
+
+    // 获取客户端IP地址，经过受信任的代理时使用代理记录的地址
     private String getClientIp(HttpExchange exchange) {
-        String ip = exchange.getRemoteAddress().getAddress().getHostAddress();
-        // 处理代理情况
-        String forwardedFor = exchange.getRequestHeaders().getFirst("X-Forwarded-For");
-        if (forwardedFor != null && !forwardedFor.isEmpty()) {
-            ip = forwardedFor.split(",")[0].trim();
+        return trustedProxies.getClientIp(exchange);
+    }
+
+    // 解析URL中的查询参数
+    static Map<String, String> parseQuery(HttpExchange exchange) {
+        return parseQuery(exchange.getRequestURI().getRawQuery());
+    }
+
+    // 解析application/x-www-form-urlencoded格式的参数
+    static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new java.util.HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int index = pair.indexOf('=');
+            String key = index >= 0 ? pair.substring(0, index) : pair;
+            String value = index >= 0 ? pair.substring(index + 1) : "";
+            params.put(java.net.URLDecoder.decode(key, StandardCharsets.UTF_8),
+                    java.net.URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    /**
+     * 读取完整的请求体
+     * @param exchange 请求
+     * @param maxBytes 最大长度
+     * @return 请求体，超过最大长度时返回null
+     */
+    static byte[] readBody(HttpExchange exchange, int maxBytes) throws IOException {
+        try (InputStream is = exchange.getRequestBody()) {
+            byte[] body = is.readNBytes(maxBytes + 1);
+            return body.length > maxBytes ? null : body;
+        }
+    }
+
+    // 读取整数查询参数，缺失或格式错误时返回默认值
+    static long parseLong(Map<String, String> params, String name, long defaultValue) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    // 写入完整的玩家列表JSON
+    void writePlayersJson(JsonWriter json) throws IOException {
+        // 从事件维护的玩家索引中读取玩家数据
+        PlayerIndex.Snapshot players = plugin.getPlayerIndex().getSnapshot();
+        json.beginObject();
+        writeServerInfo(json, players);
+        json.name("players").beginArray();
+        for (PlayerIndex.PlayerInfo player : players.getPlayers()) {
+            json.beginObject();
+            json.name("name").value(player.getName());
+            json.name("uuid").value(player.getUuid());
+            json.name("ip").value(player.getIp());
+            json.name("gamemode").value(player.getGamemode());
+            json.name("world").value(player.getWorld());
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+    }
+
+    // 写入一页玩家JSON，total是匹配的玩家总数
+    void writePlayerPageJson(JsonWriter json, PlayerQuery query) throws IOException {
+        PlayerIndex.Snapshot players = plugin.getPlayerIndex().getSnapshot();
+        java.util.List<PlayerIndex.PlayerInfo> page = new java.util.ArrayList<>();
+        int total = query.page(players.getPlayers(), page);
+        json.beginObject();
+        writeServerInfo(json, players);
+        json.name("total").value(total);
+        json.name("offset").value(query.getOffset());
+        json.name("players").beginArray();
+        for (PlayerIndex.PlayerInfo player : page) {
+            query.writePlayer(json, player);
+        }
+        json.endArray();
+        json.endObject();
+    }
+
+    // 写入指定版本之后的玩家变化JSON，版本太旧时reset为true并返回完整列表
+    void writePlayerChangesJson(JsonWriter json, long since, PlayerQuery query) throws IOException {
+        PlayerIndex.Snapshot players = plugin.getPlayerIndex().getSnapshot();
+        java.util.List<PlayerIndex.Change> changes = plugin.getPlayerIndex().getChanges(since, players.getRevision());
+        json.beginObject();
+        writeServerInfo(json, players);
+        json.name("reset").value(changes == null);
+        if (changes == null) {
+            json.name("players").beginArray();
+            for (PlayerIndex.PlayerInfo player : players.getPlayers()) {
+                query.writePlayer(json, player);
+            }
+            json.endArray();
+        } else {
+            json.name("changes").beginArray();
+            for (PlayerIndex.Change change : changes) {
+                json.beginObject();
+                json.name("revision").value(change.getRevision());
+                json.name("type").value(change.getType());
+                json.name("player");
+                query.writePlayer(json, change.getPlayer());
+                json.endObject();
+            }
+            json.endArray();
+        }
+        json.endObject();
+    }
+
+    // 写入在线人数、最大人数、服务器版本和玩家列表的版本号
+    private void writeServerInfo(JsonWriter json, PlayerIndex.Snapshot players) throws IOException {
+        ServerSnapshot snapshot = plugin.getSnapshotPublisher().getSnapshot();
+        json.name("online").value(players.getPlayers().size());
+        json.name("max").value(snapshot.getMaxPlayers());
+        json.name("version").value(snapshot.getVersion());
+        json.name("revision").value(players.getRevision());
+    }
+
+    // 写入世界列表JSON
+    void writeWorldsJson(JsonWriter json) throws IOException {
+        // 从主线程发布的快照中读取世界数据
+        ServerSnapshot snapshot = plugin.getSnapshotPublisher().getSnapshot();
+        json.beginObject();
+        json.name("worlds").beginArray();
+        for (ServerSnapshot.WorldInfo world : snapshot.getWorlds()) {
+            json.beginObject();
+            json.name("name").value(world.getName());
+            json.name("type").value(world.getType());
+            json.name("seed").value(world.getSeed());
+            json.name("players").value(world.getPlayers());
+            json.name("entities").value(world.getEntities());
+            json.name("chunks").value(world.getChunks());
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+    }
+
+    // 写入GC、内存池和分配速率的详细数据JSON
+    void writeMemoryJson(JsonWriter json) throws IOException {
+        MemoryMonitor memory = plugin.getMemoryMonitor();
+        json.beginObject();
+        json.name("allocatedBytes").value(memory.getAllocatedBytes());
+        json.name("mainAllocatedBytes").value(memory.getMainThreadAllocatedBytes());
+        json.name("allocationRate").value(memory.getAllocationRate());
+        json.name("mainAllocationRate").value(memory.getMainThreadAllocationRate());
+        json.name("heapAfterGc").value(memory.getHeapUsageAfterGc());
+        json.name("collectors").beginArray();
+        for (MemoryMonitor.CollectorStats collector : memory.getCollectors()) {
+            HttpMetrics.Histogram histogram = collector.getHistogram();
+            json.beginObject();
+            json.name("name").value(collector.getName());
+            json.name("concurrent").value(collector.isConcurrent());
+            json.name("count").value(collector.getCount());
+            json.name("totalMillis").value(histogram.getSumSeconds() * 1000);
+            json.name("maxMillis").value(collector.getMaxMillis());
+            // 耗时分布，le为上限（毫秒），count为不超过该上限的累计次数
+            json.name("histogram").beginArray();
+            double[] bounds = histogram.getBounds();
+            long[] counts = histogram.getCumulativeCounts();
+            for (int i = 0; i < bounds.length; i++) {
+                json.beginObject();
+                json.name("le").value(bounds[i] * 1000);
+                json.name("count").value(counts[i]);
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+        }
+        json.endArray();
+        json.name("recent").beginArray();
+        for (MemoryMonitor.GcEvent event : memory.getRecentCollections()) {
+            json.beginObject();
+            json.name("time").value(event.getTime());
+            json.name("collector").value(event.getCollector());
+            json.name("action").value(event.getAction());
+            json.name("cause").value(event.getCause());
+            json.name("durationMillis").value(event.getDurationMillis());
+            json.name("concurrent").value(event.isConcurrent());
+            json.endObject();
+        }
+        json.endArray();
+        json.name("pools").beginArray();
+        for (MemoryPoolMXBean pool : memory.getMemoryPools()) {
+            MemoryUsage usage = pool.getUsage();
+            MemoryUsage afterGc = pool.getCollectionUsage();
+            json.beginObject();
+            json.name("name").value(pool.getName());
+            json.name("type").value(pool.getType().name());
+            json.name("used").value(usage.getUsed());
+            json.name("committed").value(usage.getCommitted());
+            // 没有上限时为-1
+            json.name("max").value(usage.getMax());
+            if (afterGc != null) {
+                json.name("usedAfterGc").value(afterGc.getUsed());
+            }
+            json.endObject();
+        }
+        json.endArray();
+        json.name("bufferPools").beginArray();
+        for (BufferPoolMXBean pool : memory.getBufferPools()) {
+            json.beginObject();
+            json.name("name").value(pool.getName());
+            json.name("count").value(pool.getCount());
+            json.name("used").value(pool.getMemoryUsed());
+            json.name("capacity").value(pool.getTotalCapacity());
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+    }
+
+    // 写入资源历史数据JSON，按列输出：时间数组加上每个指标的最小值、最大值、平均值数组
+    void writeHistoryJson(JsonWriter json, int[] metrics, MetricsHistory.Series series) throws IOException {
+        json.beginObject();
+        json.name("resolution").value(series.getResolution());
+        json.name("step").value(series.getStep());
+        json.name("t").beginArray();
+        for (int point = 0; point < series.size(); point++) {
+            json.value(series.getTime(point));
+        }
+        json.endArray();
+        json.name("series").beginObject();
+        for (int i = 0; i < metrics.length; i++) {
+            json.name(MetricsHistory.METRICS[metrics[i]]).beginObject();
+            json.name("min").beginArray();
+            for (int point = 0; point < series.size(); point++) {
+                json.value(series.getMin(i, point));
+            }
+            json.endArray();
+            json.name("max").beginArray();
+            for (int point = 0; point < series.size(); point++) {
+                json.value(series.getMax(i, point));
+            }
+            json.endArray();
+            json.name("avg").beginArray();
+            for (int point = 0; point < series.size(); point++) {
+                json.value(series.getAvg(i, point));
+            }
+            json.endArray();
+            json.endObject();
+        }
+        json.endObject();
+        json.endObject();
+    }
+
+    // 写入批量命令的执行结果JSON
+    void writeCommandResultsJson(JsonWriter json, java.util.List<CommandBatch.Result> results) throws IOException {
+        int completed = 0;
+        json.beginObject();
+        json.name("results").beginArray();
+        for (CommandBatch.Result result : results) {
+            if (result.getDurationNanos() >= 0) {
+                completed++;
+            }
+            json.beginObject();
+            json.name("command").value(result.getCommand());
+            json.name("status").value(result.getStatus());
+            json.name("durationMicros").value(result.getDurationNanos() < 0 ? -1 : result.getDurationNanos() / 1000);
+            json.name("output").beginArray();
+            for (String line : result.getOutput()) {
+                json.value(line);
+            }
+            json.endArray();
+            if (result.getDroppedLines() > 0) {
+                json.name("droppedLines").value(result.getDroppedLines());
+            }
+            if (result.getError() != null) {
+                json.name("error").value(result.getError());
+            }
+            json.endObject();
+        }
+        json.endArray();
+        json.name("completed").value(completed);
+        json.name("total").value(results.size());
+        json.endObject();
+    }
+
+    // 写入世界的实体统计和最密集的区块JSON
+    void writeHotspotsJson(JsonWriter json, EntityCensus.Result census, EntityCensus.WorldCensus world, int limit)
+            throws IOException {
+        json.beginObject();
+        json.name("world").value(world.getName());
+        json.name("scannedAt").value(census.getCompletedAt());
+        json.name("entities").value(world.getEntities());
+        json.name("chunks").value(world.getChunks());
+        json.name("types");
+        writeCounts(json, world.getTypes());
+        json.name("hotspots").beginArray();
+        for (EntityCensus.ChunkCount chunk : world.getHotspots()) {
+            if (limit-- <= 0) {
+                break;
+            }
+            json.beginObject();
+            json.name("x").value(chunk.getX());
+            json.name("z").value(chunk.getZ());
+            // 区块左上角的方块坐标，方便直接传送过去查看
+            json.name("blockX").value(chunk.getX() * 16L);
+            json.name("blockZ").value(chunk.getZ() * 16L);
+            json.name("entities").value(chunk.getEntities());
+            json.name("types");
+            writeCounts(json, chunk.getTypes());
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+    }
+
+    private static void writeCounts(JsonWriter json, Map<String, Integer> counts) throws IOException {
+        json.beginObject();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            json.name(entry.getKey()).value(entry.getValue());
+        }
+        json.endObject();
+    }
+
+    // 写入资源监控JSON
+    void writeResourcesJson(JsonWriter json) throws IOException {
+        ResourceMonitor monitor = plugin.getResourceMonitor();
+        TickMonitor.TickStats tickStats = monitor.getTickStats(60);
+        // getCpuUsage每次调用都会重新开始计算区间，这里使用历史采样的值，不打乱每秒一次的采样区间
+        double[] latest = plugin.getMetricsHistory().getLatest();
+        json.beginObject();
+        json.name("cpu").value(latest != null ? latest[MetricsHistory.indexOf("cpu")] : 0);
+        json.name("systemCpu").value(monitor.getSystemCpuUsage());
+        json.name("memory").value(monitor.getMemoryUsage());
+        // 上次GC后的堆使用率不随分配和回收波动，更能反映内存压力
+        json.name("heapAfterGc").value(monitor.getHeapUsageAfterGc());
+        json.name("allocationRate").value(monitor.getAllocationRate());
+        json.name("mainAllocationRate").value(monitor.getMainThreadAllocationRate());
+        MemoryMonitor memory = plugin.getMemoryMonitor();
+        json.name("gcPauses").value(memory.getPauseCount());
+        json.name("gcPauseMillis").value(memory.getPauseMillis());
+        json.name("systemMemory").value(monitor.getSystemMemoryUsage());
+        json.name("disk").value(monitor.getDiskUsage());
+        json.name("tps").value(monitor.getTPS());
+        json.name("tps1m").value(monitor.getTPS(60));
+        json.name("tps5m").value(monitor.getTPS(300));
+        json.name("tickInterval").beginObject();
+        json.name("mean").value(tickStats.getMeanInterval());
+        json.name("p50").value(tickStats.getP50Interval());
+        json.name("p95").value(tickStats.getP95Interval());
+        json.name("p99").value(tickStats.getP99Interval());
+        json.name("max").value(tickStats.getMaxInterval());
+        json.endObject();
+        json.name("laggedTicks").value(tickStats.getLaggedTicks());
+        json.name("totalLaggedTicks").value(tickStats.getTotalLaggedTicks());
+        json.name("entities").value(monitor.getEntityCount());
+        json.name("onlinePlayers").value(monitor.getOnlinePlayerCount());
+        json.name("maxPlayers").value(monitor.getMaxPlayerCount());
+        json.name("loadedChunks").value(monitor.getLoadedChunksCount());
+        // 面板在主线程排队的工作和最近一个tick用的时间
+        SyncGateway gateway = plugin.getSyncGateway();
+        json.name("syncQueue").value(gateway.getQueueDepth());
+        json.name("syncTickMillis").value(gateway.getLastTickNanos() / 1e6);
+        json.endObject();
+    }
+
+    // 生成最近的服务器日志文本
+    String buildLogsText() {
+        java.util.List<String> logList = plugin.getLogListener().getRecentLogs(100);
+        StringBuilder logs = new StringBuilder();
+        for (String log : logList) {
+            logs.append(log).append("\n");
+        }
+        return logs.toString();
+    }
+
+    // 写入指定序号之后的服务器日志JSON
+    void writeLogsJson(JsonWriter json, long since, int limit) throws IOException {
+        LogListener logListener = plugin.getLogListener();
+        // 先读取最早的序号，客户端上次读取后被覆盖的日志会通过missed告知
+        long oldest = logListener.getOldestSequence();
+        writeLogsJson(json, since, oldest, logListener.getEntriesSince(since, limit));
+    }
+
+    // 写入服务器日志JSON，latest是客户端下次请求时应该使用的since
+    void writeLogsJson(JsonWriter json, long since, long oldest, java.util.List<LogListener.LogEntry> entries) throws IOException {
+        long latest = entries.isEmpty() ? Math.max(since, oldest - 1) : entries.get(entries.size() - 1).getSequence();
+        json.beginObject();
+        json.name("latest").value(latest);
+        json.name("missed").value(Math.max(0, oldest - since - 1));
+        json.name("entries").beginArray();
+        for (LogListener.LogEntry entry : entries) {
+            json.beginObject();
+            json.name("seq").value(entry.getSequence());
+            json.name("time").value(entry.getTime());
+            json.name("level").value(entry.getLevel());
+            json.name("source").value(entry.getSource());
+            json.name("message").value(entry.getMessage());
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+    }
+
+    // 生成最近的操作日志文本
+    String buildOperationLogsText() {
+        java.util.List<String> logList = plugin.getOperationLogger().getRecentLogs(100);
+        StringBuilder logs = new StringBuilder();
+        for (String log : logList) {
+            logs.append(log).append("\n");
+        }
+        return logs.toString();
+    }
+
+    // 写入操作日志查询结果JSON
+    void writeOperationLogsJson(JsonWriter json, OperationLogQuery.Result result) throws IOException {
+        json.beginObject();
+        json.name("entries").beginArray();
+        for (OperationLogIndex.Entry entry : result.getEntries()) {
+            json.beginObject();
+            json.name("time").value(entry.getTimestamp());
+            json.name("ip").value(entry.getIp());
+            json.name("category").value(entry.getCategory());
+            json.name("details").value(entry.getDetails());
+            json.endObject();
+        }
+        json.endArray();
+        json.name("nextCursor").value(result.getNextCursor());
+        json.name("incomplete").value(result.isIncomplete());
+        json.endObject();
+    }
+
+    // 发送JSON响应，内容直接写入响应流，较小的响应使用固定长度，较大的响应使用分块传输
+    static void sendJson(HttpExchange exchange, int status, JsonWriter.Content content) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        JsonWriter json = new JsonWriter(new ResponseOutputStream(exchange, status));
+        // 出错时不关闭，避免把不完整的内容当作成功的响应发送，连接由HttpServer关闭
+        content.write(json);
+        json.close();
+    }
+
+    // 发送文本响应，较大的文本按客户端支持使用gzip压缩
+    static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        try (OutputStream os = new ResponseOutputStream(exchange, status)) {
+            os.write(text.getBytes(StandardCharsets.UTF_8));
         }
-        return ip;
     }
 
     public void stop() {
+        if (streamHub != null) {
+            streamHub.stop();
+        }
+        if (assets != null) {
+            assets.stop();
+        }
         if (server != null) {
             server.stop(0);
         }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
     }
 
     private class HomeHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             // 检查IP授权
-            String clientIp = getClientIp(exchange);
-            if (!isIpAuthorized(clientIp)) {
+            if (!isIpAuthorized(exchange)) {
                 exchange.sendResponseHeaders(403, 0);
                 exchange.close();
                 return;
             }
 
-            // 从resources目录读取template.html文件
-            String html = loadTemplate();
-            
-            exchange.sendResponseHeaders(200, html.getBytes(StandardCharsets.UTF_8).length);
-            try (OutputStream os = exchange.getResponseBody()) {
-                os.write(html.getBytes(StandardCharsets.UTF_8));
-            }
-        }
-
-        private String loadTemplate() {
-            try (InputStream is = getClass().getClassLoader().getResourceAsStream("template.html")) {
-                if (is != null) {
-                    byte[] buffer = new byte[is.available()];
-                    is.read(buffer);
-                    return new String(buffer, StandardCharsets.UTF_8);
-                }
-            } catch (IOException e) {
-                plugin.getLogger().severe("读取模板文件失败: " + e.getMessage());
-            }
-            return "<html><body><h1>错误: 无法加载模板文件</h1></body></html>";
+            // 使用启动时加载并压缩好的页面，浏览器缓存有效时返回304
+            assets.getTemplate().send(exchange);
         }
     }
 
@@ -103,61 +667,34 @@ public class WebHttpServer {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             // 检查IP授权
-            String clientIp = getClientIp(exchange);
-            if (!isIpAuthorized(clientIp)) {
+            if (!isIpAuthorized(exchange)) {
                 exchange.sendResponseHeaders(403, 0);
                 exchange.close();
                 return;
             }
             
+            // 没有参数时返回完整列表，玩家列表没有变化时返回304
+            Map<String, String> params = parseQuery(exchange);
+            if (params.isEmpty()) {
+                getPlayersJson().send(exchange);
+                return;
+            }
+
+            // 带参数时按条件分页，或者只返回since版本之后的变化
+            PlayerQuery query;
             try {
-                // 使用callSyncMethod在主线程中获取玩家数据
-                final java.util.concurrent.atomic.AtomicReference<String> jsonRef = new java.util.concurrent.atomic.AtomicReference<>();
-                org.bukkit.Bukkit.getScheduler().callSyncMethod(plugin, new java.util.concurrent.Callable<Void>() {
-                    @Override
-                    public Void call() throws Exception {
-                        StringBuilder json = new StringBuilder();
-                        json.append("{");
-                        json.append("\"online\": " + org.bukkit.Bukkit.getOnlinePlayers().size() + ",");
-                        json.append("\"max\": " + org.bukkit.Bukkit.getMaxPlayers() + ",");
-                        json.append("\"version\": \"" + org.bukkit.Bukkit.getVersion() + "\",");
-                        json.append("\"players\": [");
-                        
-                        int count = 0;
-                        for (org.bukkit.entity.Player player : org.bukkit.Bukkit.getOnlinePlayers()) {
-                            if (count > 0) json.append(",");
-                            json.append("{");
-                            json.append("\"name\": \"" + player.getName() + "\",");
-                            json.append("\"uuid\": \"" + player.getUniqueId() + "\",");
-                            if (player.getAddress() != null) {
-                                json.append("\"ip\": \"" + player.getAddress().getAddress().getHostAddress() + "\",");
-                            } else {
-                                json.append("\"ip\": \"未知\",");
-                            }
-                            json.append("\"gamemode\": \"" + player.getGameMode() + "\"");
-                            json.append("}");
-                            count++;
-                        }
-                        
-                        json.append("]");
-                        json.append("}");
-                        jsonRef.set(json.toString());
-                        return null;
-                    }
-                }).get();
-                
-                String json = jsonRef.get();
-                exchange.sendResponseHeaders(200, json.getBytes(StandardCharsets.UTF_8).length);
-                try (OutputStream os = exchange.getResponseBody()) {
-                    os.write(json.getBytes(StandardCharsets.UTF_8));
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                String errorJson = "{\"error\": \"获取玩家数据失败\"}";
-                exchange.sendResponseHeaders(500, errorJson.getBytes(StandardCharsets.UTF_8).length);
-                try (OutputStream os = exchange.getResponseBody()) {
-                    os.write(errorJson.getBytes(StandardCharsets.UTF_8));
-                }
+                query = new PlayerQuery(params.get("fields"), params.get("sort"), params.get("q"),
+                        (int) Math.min(Integer.MAX_VALUE, parseLong(params, "offset", 0)),
+                        (int) Math.max(1, Math.min(1000, parseLong(params, "limit", 100))));
+            } catch (IllegalArgumentException e) {
+                sendText(exchange, 400, e.getMessage());
+                return;
+            }
+            if (params.containsKey("since")) {
+                long since = parseLong(params, "since", -1);
+                sendJson(exchange, 200, json -> writePlayerChangesJson(json, since, query));
+            } else {
+                sendJson(exchange, 200, json -> writePlayerPageJson(json, query));
             }
         }
     }
@@ -166,89 +703,160 @@ public class WebHttpServer {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             // 检查IP授权
-            String clientIp = getClientIp(exchange);
-            if (!isIpAuthorized(clientIp)) {
+            if (!isIpAuthorized(exchange)) {
                 exchange.sendResponseHeaders(403, 0);
                 exchange.close();
                 return;
             }
             
-            double cpuUsage = plugin.getResourceMonitor().getCpuUsage();
-            double systemCpuUsage = plugin.getResourceMonitor().getSystemCpuUsage();
-            double memoryUsage = plugin.getResourceMonitor().getMemoryUsage();
-            double systemMemoryUsage = plugin.getResourceMonitor().getSystemMemoryUsage();
-            double diskUsage = plugin.getResourceMonitor().getDiskUsage();
-            double tps = plugin.getResourceMonitor().getTPS();
-            int entityCount = plugin.getResourceMonitor().getEntityCount();
-            int onlinePlayers = plugin.getResourceMonitor().getOnlinePlayerCount();
-            int maxPlayers = plugin.getResourceMonitor().getMaxPlayerCount();
-            int loadedChunks = plugin.getResourceMonitor().getLoadedChunksCount();
-            
-            String json = "{" +
-                "\"cpu\": " + cpuUsage + ","
-                + "\"systemCpu\": " + systemCpuUsage + ","
-                + "\"memory\": " + memoryUsage + ","
-                + "\"systemMemory\": " + systemMemoryUsage + ","
-                + "\"disk\": " + diskUsage + ","
-                + "\"tps\": " + tps + ","
-                + "\"entities\": " + entityCount + ","
-                + "\"onlinePlayers\": " + onlinePlayers + ","
-                + "\"maxPlayers\": " + maxPlayers + ","
-                + "\"loadedChunks\": " + loadedChunks +
-                "}";
-            
-            exchange.sendResponseHeaders(200, json.getBytes(StandardCharsets.UTF_8).length);
-            try (OutputStream os = exchange.getResponseBody()) {
-                os.write(json.getBytes(StandardCharsets.UTF_8));
+            // /api/resources/history返回历史数据，用于绘制资源曲线
+            String path = exchange.getRequestURI().getRawPath();
+            if (path.equals("/api/resources/history")) {
+                Map<String, String> params = parseQuery(exchange);
+                int[] metrics;
+                try {
+                    metrics = parseMetrics(params.get("metric"));
+                } catch (IllegalArgumentException e) {
+                    sendText(exchange, 400, e.getMessage());
+                    return;
+                }
+                long to = parseLong(params, "to", System.currentTimeMillis());
+                long from = parseLong(params, "from", to - 3_600_000L);
+                if (from >= to) {
+                    sendText(exchange, 400, "开始时间必须早于结束时间");
+                    return;
+                }
+                MetricsHistory.Series series;
+                try {
+                    series = plugin.getMetricsHistory().query(metrics, from, to,
+                            Math.max(1, parseLong(params, "step", 1000)));
+                } catch (IllegalArgumentException e) {
+                    sendText(exchange, 400, e.getMessage());
+                    return;
+                }
+                sendJson(exchange, 200, json -> writeHistoryJson(json, metrics, series));
+                return;
+            }
+            if (path.equals("/api/resources/memory")) {
+                sendJson(exchange, 200, WebHttpServer.this::writeMemoryJson);
+                return;
+            }
+            if (!path.equals("/api/resources") && !path.equals("/api/resources/")) {
+                sendText(exchange, 404, "未知的路径: " + path);
+                return;
+            }
+            sendJson(exchange, 200, WebHttpServer.this::writeResourcesJson);
+        }
+    }
+
+    // 解析逗号分隔的指标名称，为空表示全部指标
+    private static int[] parseMetrics(String names) {
+        if (names == null || names.isEmpty()) {
+            int[] all = new int[MetricsHistory.METRICS.length];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        String[] parts = names.split(",");
+        int[] metrics = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            metrics[i] = MetricsHistory.indexOf(parts[i].trim());
+            if (metrics[i] < 0) {
+                throw new IllegalArgumentException("未知的指标: " + parts[i].trim() + "，可用的指标: "
+                        + String.join(",", MetricsHistory.METRICS));
             }
         }
+        return metrics;
     }
 
     private class CommandHandler implements HttpHandler {
+        // 请求体和单次批量执行的命令数量上限
+        private static final int MAX_BODY_BYTES = 1024 * 1024;
+        private static final int MAX_BATCH_COMMANDS = 1000;
+
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             // 检查IP授权
-            String clientIp = getClientIp(exchange);
-            if (!isIpAuthorized(clientIp)) {
+            if (!isIpAuthorized(exchange)) {
                 exchange.sendResponseHeaders(403, 0);
                 exchange.close();
                 return;
             }
+            String clientIp = getClientIp(exchange);
             
-            if (exchange.getRequestMethod().equals("POST")) {
-                InputStream is = exchange.getRequestBody();
-                byte[] buffer = new byte[exchange.getRequestBody().available()];
-                is.read(buffer);
-                String requestBody = new String(buffer, StandardCharsets.UTF_8);
-                
-                // 解析命令
-                final String command = requestBody.split("=")[1];
-                String decodedCommand = java.net.URLDecoder.decode(command, StandardCharsets.UTF_8.name());
-                
-                // 执行命令
-                StringBuilder result = new StringBuilder();
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.sendResponseHeaders(405, 0);
+                exchange.close();
+                return;
+            }
+            String path = exchange.getRequestURI().getRawPath();
+            boolean batch = path.equals("/api/command/batch");
+            if (!batch && !path.equals("/api/command")) {
+                sendText(exchange, 404, "未知的路径: " + path);
+                return;
+            }
+            // 按实际长度读取完整的请求体，不依赖available()
+            byte[] body = readBody(exchange, MAX_BODY_BYTES);
+            if (body == null) {
+                sendText(exchange, 413, "请求体过大");
+                return;
+            }
+            String requestBody = new String(body, StandardCharsets.UTF_8);
+
+            if (batch) {
+                // 请求体为命令字符串组成的JSON数组，所有命令在同一个主线程任务中依次执行
+                java.util.List<String> commands = new java.util.ArrayList<>();
                 try {
-                    final String finalCommand = decodedCommand;
-                    Bukkit.getScheduler().runTask(plugin, () -> {
-                        Bukkit.dispatchCommand(Bukkit.getConsoleSender(), finalCommand);
-                    });
-                    result.append("命令执行成功: " + decodedCommand);
-                    // 记录操作日志
-                    plugin.getOperationLogger().logOperation(clientIp, "命令执行", decodedCommand);
-                } catch (Exception e) {
-                    result.append("命令执行失败: " + e.getMessage());
-                    // 记录操作日志
-                    plugin.getOperationLogger().logOperation(clientIp, "命令执行", decodedCommand + " (失败: " + e.getMessage() + ")");
+                    JsonReader reader = new JsonReader(requestBody);
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        commands.add(reader.nextString());
+                    }
+                    reader.endArray();
+                    reader.endDocument();
+                } catch (IllegalArgumentException e) {
+                    sendText(exchange, 400, e.getMessage());
+                    return;
+                }
+                if (commands.isEmpty() || commands.size() > MAX_BATCH_COMMANDS) {
+                    sendText(exchange, 400, "命令数量必须在1到" + MAX_BATCH_COMMANDS + "之间");
+                    return;
                 }
-                
-                exchange.sendResponseHeaders(200, result.toString().getBytes(StandardCharsets.UTF_8).length);
-                try (OutputStream os = exchange.getResponseBody()) {
-                    os.write(result.toString().getBytes(StandardCharsets.UTF_8));
+                // 每条命令扣除一次命令额度，额度不足时返回429，超过单批上限时返回413，一条命令也不执行
+                if (!rateLimiter.acquireCommands(exchange, commands.size())) {
+                    return;
                 }
+                // 批量执行时插件命令的输出逐条捕获，执行者不是控制台
+                java.util.List<CommandBatch.Result> results = runCommands(commands, clientIp, true);
+                boolean finished = results.get(results.size() - 1).getDurationNanos() >= 0;
+                sendJson(exchange, finished ? 200 : 504, json -> writeCommandResultsJson(json, results));
+                return;
+            }
+
+            // 解析表单中的command参数
+            String command = parseQuery(requestBody).get("command");
+            if (command == null || command.isEmpty()) {
+                sendText(exchange, 400, "缺少command参数");
+                return;
+            }
+            // 单条命令始终以控制台身份执行，与在服务器控制台输入相同
+            CommandBatch.Result result = runCommands(java.util.List.of(command), clientIp, false).get(0);
+            StringBuilder text = new StringBuilder();
+            int status = 200;
+            if (result.getStatus().equals(HttpMetrics.COMMAND_SUCCESS)) {
+                text.append("命令执行成功: ").append(command);
             } else {
-                exchange.sendResponseHeaders(405, 0);
-                exchange.close();
+                text.append("命令执行失败: ").append(result.getError());
+                if (result.getDurationNanos() < 0) {
+                    status = 504;
+                }
+            }
+            // 附上命令输出
+            for (String line : result.getOutput()) {
+                text.append('\n').append(line);
             }
+            sendText(exchange, status, text.toString());
         }
     }
 
@@ -256,21 +864,20 @@ public class WebHttpServer {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             // 检查IP授权
-            String clientIp = getClientIp(exchange);
-            if (!isIpAuthorized(clientIp)) {
+            if (!isIpAuthorized(exchange)) {
                 exchange.sendResponseHeaders(403, 0);
                 exchange.close();
                 return;
             }
             
-            java.util.List<String> logList = plugin.getLogListener().getRecentLogs(100);
-            StringBuilder logs = new StringBuilder();
-            for (String log : logList) {
-                logs.append(log).append("\n");
-            }
-            exchange.sendResponseHeaders(200, logs.toString().getBytes(StandardCharsets.UTF_8).length);
-            try (OutputStream os = exchange.getResponseBody()) {
-                os.write(logs.toString().getBytes(StandardCharsets.UTF_8));
+            // 带since参数时只返回该序号之后的日志，格式为JSON
+            Map<String, String> params = parseQuery(exchange);
+            if (params.containsKey("since")) {
+                long since = parseLong(params, "since", -1);
+                int limit = (int) Math.max(1, Math.min(1000, parseLong(params, "limit", 1000)));
+                sendJson(exchange, 200, json -> writeLogsJson(json, since, limit));
+            } else {
+                sendText(exchange, 200, buildLogsText());
             }
         }
     }
@@ -279,22 +886,30 @@ public class WebHttpServer {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             // 检查IP授权
-            String clientIp = getClientIp(exchange);
-            if (!isIpAuthorized(clientIp)) {
+            if (!isIpAuthorized(exchange)) {
                 exchange.sendResponseHeaders(403, 0);
                 exchange.close();
                 return;
             }
             
-            java.util.List<String> logList = plugin.getOperationLogger().getRecentLogs(100);
-            StringBuilder logs = new StringBuilder();
-            for (String log : logList) {
-                logs.append(log).append("\n");
+            // 没有查询参数时返回最近的日志文本，带参数时按条件分页查询，返回JSON
+            Map<String, String> params = parseQuery(exchange);
+            if (params.isEmpty()) {
+                sendText(exchange, 200, buildOperationLogsText());
+                return;
             }
-            exchange.sendResponseHeaders(200, logs.toString().getBytes(StandardCharsets.UTF_8).length);
-            try (OutputStream os = exchange.getResponseBody()) {
-                os.write(logs.toString().getBytes(StandardCharsets.UTF_8));
+
+            OperationLogQuery query;
+            try {
+                query = new OperationLogQuery(parseLong(params, "from", 0), parseLong(params, "to", 0),
+                        params.get("ip"), params.get("category"), params.get("q"), params.get("cursor"),
+                        (int) Math.max(1, Math.min(1000, parseLong(params, "limit", 100))));
+            } catch (IllegalArgumentException e) {
+                sendText(exchange, 400, e.getMessage());
+                return;
             }
+            OperationLogQuery.Result result = plugin.getOperationLogger().search(query);
+            sendJson(exchange, 200, json -> writeOperationLogsJson(json, result));
         }
     }
 
@@ -302,59 +917,191 @@ public class WebHttpServer {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             // 检查IP授权
-            String clientIp = getClientIp(exchange);
-            if (!isIpAuthorized(clientIp)) {
+            if (!isIpAuthorized(exchange)) {
                 exchange.sendResponseHeaders(403, 0);
                 exchange.close();
                 return;
             }
             
-            try {
-                // 使用callSyncMethod在主线程中获取世界数据
-                final java.util.concurrent.atomic.AtomicReference<String> jsonRef = new java.util.concurrent.atomic.AtomicReference<>();
-                org.bukkit.Bukkit.getScheduler().callSyncMethod(plugin, new java.util.concurrent.Callable<Void>() {
-                    @Override
-                    public Void call() throws Exception {
-                        StringBuilder json = new StringBuilder();
-                        json.append("{");
-                        json.append("\"worlds\": [");
-                        
-                        int count = 0;
-                        for (org.bukkit.World world : org.bukkit.Bukkit.getServer().getWorlds()) {
-                            if (count > 0) json.append(",");
-                            json.append("{");
-                            json.append("\"name\": \"" + world.getName() + "\",");
-                            json.append("\"type\": \"" + world.getEnvironment() + "\",");
-                            json.append("\"seed\": " + world.getSeed() + ",");
-                            json.append("\"players\": " + world.getPlayers().size() + ",");
-                            json.append("\"entities\": " + world.getEntities().size() + ",");
-                            json.append("\"chunks\": " + world.getLoadedChunks().length);
-                            json.append("}");
-                            count++;
-                        }
-                        
-                        json.append("]");
-                        json.append("}");
-                        jsonRef.set(json.toString());
-                        return null;
+            // /api/worlds/{name}/hotspots返回该世界实体最密集的区块
+            String path = exchange.getRequestURI().getRawPath();
+            if (path.startsWith("/api/worlds/") && path.endsWith("/hotspots")) {
+                String name = java.net.URLDecoder.decode(
+                        path.substring("/api/worlds/".length(), path.length() - "/hotspots".length()), StandardCharsets.UTF_8);
+                EntityCensus.Result census = plugin.getEntityCensus().getResult();
+                EntityCensus.WorldCensus world = census.getWorld(name);
+                if (world == null) {
+                    sendText(exchange, 404, "世界不存在或还没有完成统计: " + name);
+                    return;
+                }
+                int limit = (int) Math.max(1, Math.min(100, parseLong(parseQuery(exchange), "limit", 10)));
+                sendJson(exchange, 200, json -> writeHotspotsJson(json, census, world, limit));
+                return;
+            }
+            if (!path.equals("/api/worlds") && !path.equals("/api/worlds/")) {
+                sendText(exchange, 404, "未知的路径: " + path);
+                return;
+            }
+            getWorldsJson().send(exchange);
+        }
+    }
+
+    private class ProfilerHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            // 检查IP授权
+            if (!isIpAuthorized(exchange)) {
+                exchange.sendResponseHeaders(403, 0);
+                exchange.close();
+                return;
+            }
+            String clientIp = getClientIp(exchange);
+
+            MainThreadProfiler profiler = plugin.getProfiler();
+            String path = exchange.getRequestURI().getRawPath();
+            String method = exchange.getRequestMethod();
+            switch (path) {
+                case "/api/profiler/start": {
+                    if (!method.equals("POST")) {
+                        break;
+                    }
+                    // 采样间隔1到1000毫秒，默认10毫秒；最长采样时间默认60秒，最多10分钟
+                    Map<String, String> params = parseQuery(exchange);
+                    long interval = Math.max(1, Math.min(1000, parseLong(params, "interval", 10)));
+                    long duration = Math.max(1, Math.min(600, parseLong(params, "duration", 60)));
+                    if (!profiler.start(interval, duration)) {
+                        sendText(exchange, 409, "性能分析已经在运行");
+                        return;
                     }
-                }).get();
-                
-                String json = jsonRef.get();
-                exchange.sendResponseHeaders(200, json.getBytes(StandardCharsets.UTF_8).length);
-                try (OutputStream os = exchange.getResponseBody()) {
-                    os.write(json.getBytes(StandardCharsets.UTF_8));
+                    plugin.getOperationLogger().logOperation(clientIp, "性能分析",
+                            "开始采样，间隔" + interval + "毫秒，最长" + duration + "秒");
+                    sendJson(exchange, 200, profiler::writeSummary);
+                    return;
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
-                String errorJson = "{\"error\": \"获取世界数据失败\"}";
-                exchange.sendResponseHeaders(500, errorJson.getBytes(StandardCharsets.UTF_8).length);
-                try (OutputStream os = exchange.getResponseBody()) {
-                    os.write(errorJson.getBytes(StandardCharsets.UTF_8));
+                case "/api/profiler/stop":
+                    if (!method.equals("POST")) {
+                        break;
+                    }
+                    if (profiler.stop()) {
+                        plugin.getOperationLogger().logOperation(clientIp, "性能分析", "停止采样");
+                    }
+                    sendJson(exchange, 200, profiler::writeSummary);
+                    return;
+                case "/api/profiler/report": {
+                    // 默认返回折叠栈，format=summary时返回采样统计和插件占比
+                    if ("summary".equals(parseQuery(exchange).get("format"))) {
+                        sendJson(exchange, 200, profiler::writeSummary);
+                        return;
+                    }
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                    java.io.Writer out = new java.io.BufferedWriter(new java.io.OutputStreamWriter(
+                            new ResponseOutputStream(exchange, 200), StandardCharsets.UTF_8));
+                    profiler.writeFolded(out);
+                    out.close();
+                    return;
                 }
+                default:
+                    sendText(exchange, 404, "未知的路径: " + path);
+                    return;
             }
+            exchange.sendResponseHeaders(405, 0);
+            exchange.close();
         }
     }
 
+    private class PluginsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            // 检查IP授权
+            if (!isIpAuthorized(exchange)) {
+                exchange.sendResponseHeaders(403, 0);
+                exchange.close();
+                return;
+            }
+            String clientIp = getClientIp(exchange);
 
+            PluginCostMonitor monitor = plugin.getPluginCostMonitor();
+            String path = exchange.getRequestURI().getRawPath();
+            String method = exchange.getRequestMethod();
+            // 监听器最多列出1000个，默认20个
+            int limit = (int) Math.max(1, Math.min(1000, parseLong(parseQuery(exchange), "limit", 20)));
+            switch (path) {
+                case "/api/plugins/cost":
+                    sendCostReport(exchange, monitor, limit);
+                    return;
+                case "/api/plugins/cost/start":
+                    if (!method.equals("POST")) {
+                        break;
+                    }
+                    if (!monitor.start()) {
+                        sendText(exchange, 409, "插件耗时统计已经在运行");
+                        return;
+                    }
+                    plugin.getOperationLogger().logOperation(clientIp, "插件耗时统计", "开始统计");
+                    sendCostReport(exchange, monitor, limit);
+                    return;
+                case "/api/plugins/cost/stop":
+                    if (!method.equals("POST")) {
+                        break;
+                    }
+                    if (monitor.stop()) {
+                        plugin.getOperationLogger().logOperation(clientIp, "插件耗时统计", "停止统计");
+                    }
+                    sendCostReport(exchange, monitor, limit);
+                    return;
+                default:
+                    sendText(exchange, 404, "未知的路径: " + path);
+                    return;
+            }
+            exchange.sendResponseHeaders(405, 0);
+            exchange.close();
+        }
+
+        // 调度任务数量在主线程读取，同时打开的多个面板共用同一次读取，主线程繁忙时报告中不包括任务数量
+        private void sendCostReport(HttpExchange exchange, PluginCostMonitor monitor, int limit) throws IOException {
+            Map<String, int[]> tasks = awaitSync(monitor.countTasks());
+            sendJson(exchange, 200, json -> monitor.writeReport(json, limit, tasks));
+        }
+    }
+
+    private class MetricsHandler implements HttpHandler {
+        private final PrometheusExporter exporter;
+
+        MetricsHandler(PrometheusExporter exporter) {
+            this.exporter = exporter;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            // 检查IP授权，Prometheus所在的地址需要先授权
+            if (!isIpAuthorized(exchange)) {
+                exchange.sendResponseHeaders(403, 0);
+                exchange.close();
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", PrometheusExporter.CONTENT_TYPE);
+            java.io.Writer out = new java.io.BufferedWriter(new java.io.OutputStreamWriter(
+                    new ResponseOutputStream(exchange, 200), StandardCharsets.UTF_8));
+            // 与sendJson相同，出错时不关闭，避免发送不完整的指标
+            exporter.write(out);
+            out.close();
+        }
+    }
+
+    private class StreamHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            // 检查IP授权
+            if (!isIpAuthorized(exchange)) {
+                exchange.sendResponseHeaders(403, 0);
+                exchange.close();
+                return;
+            }
+            String clientIp = getClientIp(exchange);
+            
+            // 连接交给推送中心保持，处理线程立即返回
+            streamHub.subscribe(exchange, clientIp);
+        }
+    }
 }
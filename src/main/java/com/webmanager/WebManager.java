@@ -2,12 +2,25 @@ package com.webmanager;
 
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class WebManager extends JavaPlugin {
 
     private WebHttpServer httpServer;
+    private SnapshotPublisher snapshotPublisher;
+    private PlayerIndex playerIndex;
+    private TickMonitor tickMonitor;
+    private MemoryMonitor memoryMonitor;
+    private EntityCensus entityCensus;
+    private SyncGateway syncGateway;
+    private MainThreadProfiler profiler;
+    private PluginCostMonitor pluginCostMonitor;
     private ResourceMonitor resourceMonitor;
+    private MetricsHistory metricsHistory;
     private LogListener logListener;
     private IpAuthorizationManager ipAuthManager;
     private OperationLogger operationLogger;
@@ -16,20 +29,56 @@ public class WebManager extends JavaPlugin {
     public void onEnable() {
         getLogger().info("WebManager 插件已启用");
         
+        // 第一次启动时生成默认的config.yml
+        saveDefaultConfig();
+        FileConfiguration config = getConfig();
+        
         // 初始化组件
-        resourceMonitor = new ResourceMonitor();
+        snapshotPublisher = new SnapshotPublisher(this);
+        playerIndex = new PlayerIndex();
+        tickMonitor = new TickMonitor(this);
+        entityCensus = new EntityCensus(this);
+        syncGateway = new SyncGateway(this, Math.max(1, config.getLong("sync-gateway.budget-millis", 5)));
+        // onEnable在主线程中执行，记录主线程供性能分析和分配统计使用
+        profiler = new MainThreadProfiler(this, Thread.currentThread());
+        memoryMonitor = new MemoryMonitor(Thread.currentThread());
+        pluginCostMonitor = new PluginCostMonitor(this);
+        resourceMonitor = new ResourceMonitor(this);
+        metricsHistory = new MetricsHistory(this);
         logListener = new LogListener();
         ipAuthManager = new IpAuthorizationManager(this);
-        operationLogger = new OperationLogger(this);
+        operationLogger = new OperationLogger(this,
+                Math.max(1, config.getInt("operation-log.queue-capacity", 8192)),
+                Math.max(0, config.getLong("operation-log.sync-interval-millis", 1000)),
+                config.getBoolean("operation-log.block-when-full", false));
         
         // 注册日志监听器
         logListener.register(this);
+        // 注册在线玩家索引
+        playerIndex.register(this);
+        
+        // 启动主线程快照采集
+        snapshotPublisher.start();
+        tickMonitor.start();
+        memoryMonitor.start();
+        entityCensus.start();
+        // 启动面板主线程工作的统一处理
+        syncGateway.start();
+        // 启动资源历史数据采样
+        metricsHistory.start();
         
         // 注册命令
         getCommand("webmanager").setExecutor(this);
         
         // 启动HTTP服务器
-        httpServer = new WebHttpServer(this);
+        httpServer = new WebHttpServer(this,
+                Math.max(1, config.getInt("http.max-concurrent", 32)),
+                Math.max(0, config.getInt("http.max-queued", 128)),
+                Math.max(0, config.getLong("http.queue-timeout-millis", 2000)),
+                Math.max(1, config.getLong("http.sync-timeout-millis", 5000)),
+                loadTrustedProxies(config),
+                Math.max(0.01, config.getDouble("rate-limit.commands-per-second", 1)),
+                Math.max(1, config.getInt("rate-limit.command-burst", 5)));
         httpServer.start(9876);
         
         getLogger().info("WebManager HTTP服务器已启动在端口 9876");
@@ -37,6 +86,32 @@ public class WebManager extends JavaPlugin {
         getLogger().info("使用 /webmanager add <ip> <days> 授权IP访问");
     }
 
+    /**
+     * 读取受信任的反向代理，没有配置时只信任本机，格式错误的条目跳过
+     * @param config 插件配置
+     * @return 有效的地址或网段
+     */
+    private List<String> loadTrustedProxies(FileConfiguration config) {
+        List<String> configured = config.contains("trusted-proxies")
+                ? config.getStringList("trusted-proxies")
+                : List.of("127.0.0.0/8", "::1");
+        List<String> proxies = new ArrayList<>(configured.size());
+        for (String proxy : configured) {
+            try {
+                IpAddresses.parseCidr(proxy.trim());
+                proxies.add(proxy.trim());
+            } catch (IllegalArgumentException e) {
+                getLogger().warning("忽略无效的反向代理地址 " + proxy + ": " + e.getMessage());
+            }
+        }
+        if (proxies.isEmpty()) {
+            getLogger().info("没有受信任的反向代理，所有请求都使用连接地址，忽略X-Forwarded-For");
+        } else {
+            getLogger().info("受信任的反向代理: " + String.join(", ", proxies) + "，只有来自这些地址的请求才读取X-Forwarded-For");
+        }
+        return proxies;
+    }
+
     @Override
     public void onDisable() {
         getLogger().info("WebManager 插件已禁用");
@@ -44,6 +119,39 @@ public class WebManager extends JavaPlugin {
         if (httpServer != null) {
             httpServer.stop();
         }
+        if (syncGateway != null) {
+            syncGateway.stop();
+        }
+        if (profiler != null) {
+            profiler.close();
+        }
+        if (pluginCostMonitor != null) {
+            pluginCostMonitor.close();
+        }
+        if (snapshotPublisher != null) {
+            snapshotPublisher.stop();
+        }
+        if (tickMonitor != null) {
+            tickMonitor.stop();
+        }
+        if (memoryMonitor != null) {
+            memoryMonitor.stop();
+        }
+        if (entityCensus != null) {
+            entityCensus.stop();
+        }
+        if (metricsHistory != null) {
+            metricsHistory.stop();
+        }
+        if (logListener != null) {
+            logListener.unregister();
+        }
+        if (ipAuthManager != null) {
+            ipAuthManager.close();
+        }
+        if (operationLogger != null) {
+            operationLogger.close();
+        }
     }
 
     @Override
@@ -55,8 +163,8 @@ public class WebManager extends JavaPlugin {
 
         if (args.length == 0) {
             sender.sendMessage("§aWebManager 命令帮助:");
-            sender.sendMessage("§a/webmanager add <ip> <days> - 授权IP访问管理界面");
-            sender.sendMessage("§a/webmanager remove <ip> - 移除IP授权");
+            sender.sendMessage("§a/webmanager add <ip|网段> <days> - 授权IP或网段访问管理界面，例如 192.168.1.0/24");
+            sender.sendMessage("§a/webmanager remove <ip|网段> - 移除IP授权");
             sender.sendMessage("§a/webmanager list - 查看所有授权IP");
             sender.sendMessage("§a/webmanager reload - 重新加载插件");
             return true;
@@ -65,7 +173,7 @@ public class WebManager extends JavaPlugin {
         switch (args[0].toLowerCase()) {
             case "add":
                 if (args.length != 3) {
-                    sender.sendMessage("§c用法: /webmanager add <ip> <days>");
+                    sender.sendMessage("§c用法: /webmanager add <ip|网段> <days>");
                     return true;
                 }
                 try {
@@ -75,20 +183,25 @@ public class WebManager extends JavaPlugin {
                         sender.sendMessage("§c天数必须大于0");
                         return true;
                     }
-                    ipAuthManager.addAuthorizedIp(ip, days);
+                    ip = ipAuthManager.addAuthorizedIp(ip, days);
                     sender.sendMessage("§a已授权IP " + ip + " 访问 " + days + " 天");
                     getLogger().info("管理员 " + sender.getName() + " 授权IP " + ip + " 访问 " + days + " 天");
                 } catch (NumberFormatException e) {
                     sender.sendMessage("§c无效的天数");
+                } catch (IllegalArgumentException e) {
+                    sender.sendMessage("§c无效的IP地址或网段: " + args[1]);
                 }
                 break;
             case "remove":
                 if (args.length != 2) {
-                    sender.sendMessage("§c用法: /webmanager remove <ip>");
+                    sender.sendMessage("§c用法: /webmanager remove <ip|网段>");
                     return true;
                 }
                 String removeIp = args[1];
-                ipAuthManager.removeAuthorizedIp(removeIp);
+                if (!ipAuthManager.removeAuthorizedIp(removeIp)) {
+                    sender.sendMessage("§cIP " + removeIp + " 没有被授权");
+                    return true;
+                }
                 sender.sendMessage("§a已移除IP " + removeIp + " 的授权");
                 getLogger().info("管理员 " + sender.getName() + " 移除了IP " + removeIp + " 的授权");
                 break;
@@ -109,10 +222,46 @@ public class WebManager extends JavaPlugin {
         return true;
     }
 
+    public SnapshotPublisher getSnapshotPublisher() {
+        return snapshotPublisher;
+    }
+
+    public PlayerIndex getPlayerIndex() {
+        return playerIndex;
+    }
+
+    public TickMonitor getTickMonitor() {
+        return tickMonitor;
+    }
+
+    public MemoryMonitor getMemoryMonitor() {
+        return memoryMonitor;
+    }
+
+    public EntityCensus getEntityCensus() {
+        return entityCensus;
+    }
+
+    public SyncGateway getSyncGateway() {
+        return syncGateway;
+    }
+
+    public MainThreadProfiler getProfiler() {
+        return profiler;
+    }
+
+    public PluginCostMonitor getPluginCostMonitor() {
+        return pluginCostMonitor;
+    }
+
     public ResourceMonitor getResourceMonitor() {
         return resourceMonitor;
     }
 
+    public MetricsHistory getMetricsHistory() {
+        return metricsHistory;
+    }
+
     public LogListener getLogListener() {
         return logListener;
     }